@@ -0,0 +1,274 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+// Month-by-month repayment of a fixed-rate loan: payment, interest,
+// principal and remaining balance for each month. Rows are produced one at
+// a time by a Cursor, or written straight to a Writer as CSV, so a schedule
+// of any length, or schedules for a whole portfolio, never sit in memory.
+// Neither path creates a String or DecimalFormat per row.
+//
+// The payment is the standard annuity formula, with (1 + r)^n computed once
+// per loan. The final month absorbs the rounding drift so the balance ends
+// at exactly zero.
+//
+// A schedule built with a Money context is computed in units of money
+// instead: the payment is rounded once, each month's interest is rounded,
+// and the rows add up exactly, matching Loan results from the same context.
+public final class AmortizationSchedule {
+
+    public static final String CSV_HEADER = "loan,month,payment,interest,principal,balance";
+
+    private final double principal;
+    private final double monthlyRate;
+    private final int months;
+    private final double payment;
+    // Set for schedules in units of money, kept in the long fields
+    private final Money money;
+    private final long principalUnits;
+    private final long paymentUnits;
+
+    public AmortizationSchedule(double principal, double monthlyRate, int months) {
+        if (months < 1) {
+            throw new RuntimeException("Loan term must be at least one month");
+        }
+        this.principal = principal;
+        this.monthlyRate = monthlyRate;
+        this.months = months;
+        this.payment = monthlyPayment(principal, monthlyRate, months);
+        this.money = null;
+        this.principalUnits = 0;
+        this.paymentUnits = 0;
+    }
+
+    // principal in units of money
+    public AmortizationSchedule(Money money, long principal, double monthlyRate, int months) {
+        if (months < 1) {
+            throw new RuntimeException("Loan term must be at least one month");
+        }
+        this.principal = 0;
+        this.monthlyRate = monthlyRate;
+        this.months = months;
+        this.payment = 0;
+        this.money = money;
+        this.principalUnits = principal;
+        this.paymentUnits = monthlyPayment(money, principal, monthlyRate, months);
+    }
+
+    // A zero rate is simply principal / months
+    public static double monthlyPayment(double principal, double monthlyRate, double months) {
+        if (monthlyRate == 0) return principal / months;
+        double growth = Math.pow(1 + monthlyRate, months);
+        return principal * (monthlyRate * growth) / (growth - 1);
+    }
+
+    // The payment in units of money (cents for Money.CENTS), rounded once
+    public static long monthlyPayment(Money money, long principal, double monthlyRate, int months) {
+        return money.fromDouble(monthlyPayment(money.toDouble(principal), monthlyRate, months));
+    }
+
+    // The total interest in units of money when every month's interest is
+    // rounded and the last payment clears the balance: the exact sum of the
+    // monthly interest charged, not payment * months - principal in doubles
+    public static long totalInterest(Money money, long principal, double monthlyRate, int months, long payment) {
+        long balance = principal;
+        long total = 0;
+        for (int month = 1; month < months; month++) {
+            long interest = money.multiply(balance, monthlyRate);
+            total = money.add(total, interest);
+            balance = money.subtract(balance, money.subtract(payment, interest));
+        }
+        return money.add(total, money.multiply(balance, monthlyRate));
+    }
+
+    public double getPrincipal() {
+        return money != null ? money.toDouble(principalUnits) : principal;
+    }
+
+    public double getMonthlyRate() {
+        return monthlyRate;
+    }
+
+    public int getMonths() {
+        return months;
+    }
+
+    public double getPayment() {
+        return money != null ? money.toDouble(paymentUnits) : payment;
+    }
+
+    public double getTotalInterest() {
+        if (money != null) {
+            return money.toDouble(totalInterest(money, principalUnits, monthlyRate, months, paymentUnits));
+        }
+        return payment * months - principal;
+    }
+
+    // The context of a schedule in units of money, or null for doubles
+    public Money getMoney() {
+        return money;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    // Writes one CSV row per month, each starting with the loan number
+    public void writeCsv(Writer out, long loan) throws IOException {
+        char[] line = new char[160];
+        int prefix = appendLong(line, 0, loan);
+        line[prefix++] = ',';
+        Cursor row = new Cursor();
+        while (row.next()) {
+            int pos = appendLong(line, prefix, row.getMonth());
+            line[pos++] = ',';
+            pos = appendAmount(line, pos, row.rowPayment, row.paymentUnitsPaid);
+            line[pos++] = ',';
+            pos = appendAmount(line, pos, row.interest, row.interestUnits);
+            line[pos++] = ',';
+            pos = appendAmount(line, pos, row.principalPaid, row.principalUnitsPaid);
+            line[pos++] = ',';
+            pos = appendAmount(line, pos, row.balance, row.balanceUnits);
+            line[pos++] = '\n';
+            out.write(line, 0, pos);
+        }
+    }
+
+    // Walks the schedule one month at a time; the getters describe the
+    // month of the last successful next()
+    public final class Cursor {
+        private int month;
+        private double rowPayment;
+        private double interest;
+        private double principalPaid;
+        private double balance = principal;
+        private long paymentUnitsPaid;
+        private long interestUnits;
+        private long principalUnitsPaid;
+        private long balanceUnits = principalUnits;
+
+        private Cursor() {
+        }
+
+        public boolean next() {
+            if (month == months) return false;
+            month++;
+            if (money != null) {
+                nextUnits();
+                return true;
+            }
+            interest = balance * monthlyRate;
+            if (month == months) {
+                principalPaid = balance;
+                rowPayment = balance + interest;
+                balance = 0;
+            } else {
+                rowPayment = payment;
+                principalPaid = payment - interest;
+                balance -= principalPaid;
+            }
+            return true;
+        }
+
+        // The same steps as totalInterest, so the interest column sums to it
+        private void nextUnits() {
+            interestUnits = money.multiply(balanceUnits, monthlyRate);
+            if (month == months) {
+                principalUnitsPaid = balanceUnits;
+                paymentUnitsPaid = money.add(balanceUnits, interestUnits);
+                balanceUnits = 0;
+            } else {
+                paymentUnitsPaid = paymentUnits;
+                principalUnitsPaid = money.subtract(paymentUnits, interestUnits);
+                balanceUnits = money.subtract(balanceUnits, principalUnitsPaid);
+            }
+        }
+
+        public int getMonth() {
+            return month;
+        }
+
+        public double getPayment() {
+            return money != null ? money.toDouble(paymentUnitsPaid) : rowPayment;
+        }
+
+        public double getInterest() {
+            return money != null ? money.toDouble(interestUnits) : interest;
+        }
+
+        public double getPrincipalPaid() {
+            return money != null ? money.toDouble(principalUnitsPaid) : principalPaid;
+        }
+
+        public double getBalance() {
+            return money != null ? money.toDouble(balanceUnits) : balance;
+        }
+    }
+
+    private int appendAmount(char[] buffer, int pos, double value, long units) {
+        return money != null ? appendUnits(buffer, pos, units, money.getScale()) : appendMoney(buffer, pos, value);
+    }
+
+    private static int appendLong(char[] buffer, int pos, long value) {
+        if (value < 0) {
+            buffer[pos++] = '-';
+            value = -value;
+        }
+        int start = pos;
+        do {
+            buffer[pos++] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        // Digits were written backwards
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            char t = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = t;
+        }
+        return pos;
+    }
+
+    // Exactly as Money.format writes it: 123450 at scale 2 is "1234.50"
+    private static int appendUnits(char[] buffer, int pos, long units, int scale) {
+        if (units < 0) {
+            buffer[pos++] = '-';
+            units = -units;
+        }
+        int start = pos;
+        pos = appendLong(buffer, pos, units);
+        // At least one digit before the point
+        int digits = pos - start;
+        if (digits <= scale) {
+            int pad = scale + 1 - digits;
+            System.arraycopy(buffer, start, buffer, start + pad, digits);
+            Arrays.fill(buffer, start, start + pad, '0');
+            pos += pad;
+        }
+        if (scale > 0) {
+            System.arraycopy(buffer, pos - scale, buffer, pos - scale + 1, scale);
+            buffer[pos - scale] = '.';
+            pos++;
+        }
+        return pos;
+    }
+
+    // Rounded to cents, half to even on the exact value of the double, as
+    // formatMoney's DecimalFormat rounds: "1234.50"
+    private static int appendMoney(char[] buffer, int pos, double value) {
+        if (!(Math.abs(value) < 1e15)) {
+            String text = Double.toString(value);
+            text.getChars(0, text.length(), buffer, pos);
+            return pos + text.length();
+        }
+        long cents = Money.CENTS.fromDouble(value);
+        if (cents < 0) {
+            buffer[pos++] = '-';
+            cents = -cents;
+        }
+        pos = appendLong(buffer, pos, cents / 100);
+        buffer[pos++] = '.';
+        buffer[pos++] = (char) ('0' + cents / 10 % 10);
+        buffer[pos++] = (char) ('0' + cents % 10);
+        return pos;
+    }
+}
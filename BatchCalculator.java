@@ -0,0 +1,426 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+// Command-line batch mode: reads one calculation per line and writes one
+// result line per input line, in the same order, as "input = result".
+// Lines may mix every syntax the GUI accepts (expressions, "loan ...",
+// "10 meter to foot", "mean 1,2,3"). Blank lines and lines starting with #
+// are copied through unchanged.
+//
+// With more than one thread, the reader cuts the input into chunks of lines
+// that a ForkJoinPool evaluates in parallel, while a writer thread emits the
+// finished chunks in input order through a reorder buffer. The buffer holds
+// a fixed number of chunks, and the reader waits when it is full, so memory
+// use does not grow with the size of the input.
+//
+// With --stats, the input is instead treated as one long list of numbers and
+// summarized in a single pass (count, sum, mean, standard deviation, min,
+// max, approximate median and percentiles) without holding the numbers in
+// memory. Files are memory-mapped. --format text or --format raw (little-
+// endian doubles; --raw for short) says how to read them; without it .f64
+// and .bin files are raw and other files are checked for binary content.
+// --exact loads the numbers instead and computes the full analysis with an
+// exact median.
+//
+// With --schedule, each line is a loan ("loan 250000 6.5 30") and the output
+// is its full amortization schedule as CSV, one row per month, streamed
+// straight to the output.
+//
+// With --money, loans, investments and schedules are computed exactly in
+// cents. With --precision DIGITS, expressions are evaluated in decimal
+// arithmetic to that many significant digits.
+//
+// Usage: java BatchCalculator [--threads N] [--chunk LINES] [--output FILE] [--money]
+//                             [--precision DIGITS]
+//                             [--stats [--format text|raw] [--exact] | --schedule] [FILE...]
+// With no FILE, reads standard input; with no --output, writes standard output.
+public class BatchCalculator {
+
+    private static final int OUTPUT_BUFFER = 1 << 16;
+    private static final int DEFAULT_CHUNK = 1024;
+    // Chunks per worker the reorder buffer can hold
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private final CalculatorEngine engine;
+    private final int threads;
+    private final int chunkSize;
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    // Significant digits for expressions in precision mode, or 0 for double
+    private final int precision;
+
+    public BatchCalculator(CalculatorEngine engine, int threads) {
+        this(engine, threads, DEFAULT_CHUNK);
+    }
+
+    public BatchCalculator(CalculatorEngine engine, int threads, int chunkSize) {
+        this(engine, threads, chunkSize, 0);
+    }
+
+    public BatchCalculator(CalculatorEngine engine, int threads, int chunkSize, int precision) {
+        if (threads < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("Threads and chunk size must be at least 1");
+        }
+        if (precision < 0) {
+            throw new IllegalArgumentException("Precision must not be negative");
+        }
+        this.engine = engine;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+        this.precision = precision;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int chunkSize = DEFAULT_CHUNK;
+        String output = null;
+        boolean stats = false;
+        MappedNumberFile.Format format = null;
+        boolean exact = false;
+        boolean schedule = false;
+        Money money = null;
+        int precision = 0;
+        List<String> inputs = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--chunk":
+                    chunkSize = Integer.parseInt(args[++i]);
+                    break;
+                case "--output":
+                    output = args[++i];
+                    break;
+                case "--stats":
+                    stats = true;
+                    break;
+                case "--raw":
+                    format = MappedNumberFile.Format.DOUBLE_LE;
+                    break;
+                case "--format":
+                    format = parseFormat(args[++i]);
+                    break;
+                case "--exact":
+                    exact = true;
+                    break;
+                case "--schedule":
+                    schedule = true;
+                    break;
+                case "--money":
+                    money = Money.CENTS;
+                    break;
+                case "--precision":
+                    precision = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    inputs.add(args[i]);
+            }
+        }
+
+        if (stats) {
+            summarize(inputs, output, format, exact);
+            return;
+        }
+        CalculatorEngine engine = new CalculatorEngine(1024, money);
+        if (schedule) {
+            schedules(engine, inputs, output);
+            return;
+        }
+
+        BatchCalculator batch = new BatchCalculator(engine, threads, chunkSize, precision);
+        long start = System.nanoTime();
+        try (Writer out = openOutput(output)) {
+            if (inputs.isEmpty()) {
+                batch.run(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)), out);
+            } else {
+                for (String input : inputs) {
+                    try (BufferedReader in = Files.newBufferedReader(Paths.get(input), StandardCharsets.UTF_8)) {
+                        batch.run(in, out);
+                    }
+                }
+            }
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.err.println("Processed " + batch.lines.sum() + " lines (" + batch.errors.sum() + " errors) in "
+                           + millis + " ms");
+    }
+
+    private static MappedNumberFile.Format parseFormat(String name) {
+        switch (name) {
+            case "text":
+                return MappedNumberFile.Format.TEXT;
+            case "raw":
+                return MappedNumberFile.Format.DOUBLE_LE;
+            default:
+                throw new IllegalArgumentException("Unknown format: " + name + " (use text or raw)");
+        }
+    }
+
+    private static void summarize(List<String> inputs, String output, MappedNumberFile.Format format,
+                                  boolean exact)
+            throws IOException {
+        if (exact) {
+            if (inputs.size() != 1) {
+                throw new IllegalArgumentException("--exact takes exactly one input file");
+            }
+            CalculationResult result = new CalculatorEngine().analyzeFile(Paths.get(inputs.get(0)), format);
+            try (Writer out = openOutput(output)) {
+                out.write(result.toString());
+                out.write('\n');
+            }
+            return;
+        }
+
+        StatisticsAccumulator stats = new StatisticsAccumulator();
+        QuantileSketch sketch = new QuantileSketch();
+        java.util.function.DoubleConsumer consumer = value -> {
+            stats.add(value);
+            sketch.add(value);
+        };
+        if (inputs.isEmpty()) {
+            CalculatorEngine.accumulate(new InputStreamReader(System.in, StandardCharsets.UTF_8), consumer);
+        } else {
+            for (String input : inputs) {
+                CalculatorEngine.mapFile(Paths.get(input), format).forEach(consumer);
+            }
+        }
+        try (Writer out = openOutput(output)) {
+            out.write(stats.toResult(sketch).toString());
+            out.write('\n');
+        }
+    }
+
+    private static void schedules(CalculatorEngine engine, List<String> inputs, String output)
+            throws IOException {
+        long loans = 0;
+        long errors = 0;
+        try (Writer out = openOutput(output)) {
+            out.write(AmortizationSchedule.CSV_HEADER);
+            out.write('\n');
+            List<String> sources = inputs.isEmpty() ? java.util.Collections.singletonList(null) : inputs;
+            for (String input : sources) {
+                try (BufferedReader in = input == null
+                         ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                         : Files.newBufferedReader(Paths.get(input), StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        String loan = line.trim();
+                        if (loan.isEmpty() || loan.startsWith("#")) continue;
+                        try {
+                            AmortizationSchedule table = engine.amortize(loan);
+                            table.writeCsv(out, ++loans);
+                        } catch (RuntimeException e) {
+                            errors++;
+                            System.err.println(loan + " = Error: " + e.getMessage());
+                        }
+                    }
+                }
+            }
+        }
+        System.err.println("Wrote schedules for " + loans + " loans (" + errors + " errors)");
+    }
+
+    private static Writer openOutput(String output) throws IOException {
+        FileChannel channel = output == null
+            ? new FileOutputStream(FileDescriptor.out).getChannel()
+            : FileChannel.open(Paths.get(output), StandardOpenOption.CREATE,
+                               StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        return new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), OUTPUT_BUFFER);
+    }
+
+    public void run(BufferedReader in, Writer out) throws IOException {
+        if (threads == 1) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                out.write(calculate(line));
+                out.write('\n');
+            }
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        ReorderBuffer buffer = new ReorderBuffer(threads * CHUNKS_PER_WORKER);
+        Thread writer = new Thread(() -> buffer.drainTo(out), "batch-writer");
+        writer.start();
+        long sequence = 0;
+        try {
+            String[] chunk;
+            while ((chunk = readChunk(in)) != null) {
+                long number = sequence;
+                String[] lines = chunk;
+                buffer.reserve(number);
+                // Per-line failures are already error lines; anything thrown
+                // here (such as OutOfMemoryError) stops the batch
+                pool.execute(() -> {
+                    try {
+                        buffer.complete(number, calculateChunk(lines));
+                    } catch (Throwable t) {
+                        buffer.fail(t);
+                    }
+                });
+                sequence++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            buffer.fail(new InterruptedIOException("Interrupted while processing batch"));
+        } finally {
+            // Even when reading fails, the chunks already handed out are
+            // written before the caller gets to close out
+            buffer.finish(sequence);
+            joinWriter(writer, buffer);
+            pool.shutdownNow();
+        }
+        buffer.rethrow();
+    }
+
+    // Waits for the writer without giving up on an interrupt, which instead
+    // aborts the writer so it returns promptly
+    private static void joinWriter(Thread writer, ReorderBuffer buffer) {
+        boolean interrupted = false;
+        for (;;) {
+            try {
+                writer.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+                buffer.fail(new InterruptedIOException("Interrupted while writing results"));
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    // Up to chunkSize lines, or null at end of input
+    private String[] readChunk(BufferedReader in) throws IOException {
+        String[] chunk = new String[chunkSize];
+        int count = 0;
+        String line;
+        while (count < chunkSize && (line = in.readLine()) != null) {
+            chunk[count++] = line;
+        }
+        if (count == 0) return null;
+        return count == chunkSize ? chunk : java.util.Arrays.copyOf(chunk, count);
+    }
+
+    private String calculateChunk(String[] lines) {
+        StringBuilder text = new StringBuilder(lines.length * 48);
+        for (String line : lines) {
+            text.append(calculate(line)).append('\n');
+        }
+        return text.toString();
+    }
+
+    // One output line for one input line; failures become "input = Error: ..."
+    String calculate(String line) {
+        String input = line.trim();
+        lines.increment();
+        if (input.isEmpty() || input.startsWith("#")) {
+            return line;
+        }
+        try {
+            // Multi-line results (loan, statistics) are joined onto one line
+            CalculatorEngine.Mode mode = CalculatorEngine.detectMode(input);
+            CalculationResult result = precision > 0 && mode == CalculatorEngine.Mode.SCIENTIFIC
+                ? engine.evaluatePrecise(input, precision)
+                : engine.calculate(mode, input);
+            return input + " = " + result.toString().replace("\n", "; ");
+        } catch (RuntimeException e) {
+            errors.increment();
+            return input + " = Error: " + e.getMessage();
+        } catch (StackOverflowError e) {
+            // The parser and evaluators recurse once per level of nesting;
+            // one pathological line must not end the whole run
+            errors.increment();
+            return input + " = Error: Expression too deeply nested";
+        }
+    }
+
+    // Finished chunks wait here until every chunk before them has been
+    // written. Chunk n lives in slot n % capacity; the reader may not start
+    // chunk n until chunk n - capacity has been written, which bounds both
+    // the chunks in flight and the results held.
+    private static final class ReorderBuffer {
+        private final String[] slots;
+        private long written;
+        private long total = -1;
+        private Throwable failure;
+        private boolean aborted;
+
+        ReorderBuffer(int capacity) {
+            this.slots = new String[capacity];
+        }
+
+        synchronized void reserve(long sequence) throws IOException, InterruptedException {
+            while (sequence - written >= slots.length && !aborted) wait();
+            rethrow();
+        }
+
+        synchronized void complete(long sequence, String text) {
+            slots[(int) (sequence % slots.length)] = text;
+            notifyAll();
+        }
+
+        synchronized void finish(long chunks) {
+            total = chunks;
+            notifyAll();
+        }
+
+        // Stops the reader and the writer; the first failure is kept
+        synchronized void fail(Throwable t) {
+            if (failure == null) failure = t;
+            aborted = true;
+            notifyAll();
+        }
+
+        // The first failure as it was thrown, so the caller sees the cause
+        synchronized void rethrow() throws IOException {
+            if (failure == null) return;
+            if (failure instanceof IOException) throw (IOException) failure;
+            if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+            if (failure instanceof Error) throw (Error) failure;
+            throw new IOException("Calculation failed: " + failure, failure);
+        }
+
+        // Runs on the writer thread until every chunk has been written
+        void drainTo(Writer out) {
+            try {
+                for (;;) {
+                    String text;
+                    synchronized (this) {
+                        int slot = (int) (written % slots.length);
+                        while (slots[slot] == null && written != total && !aborted) wait();
+                        if (aborted || written == total) return;
+                        text = slots[slot];
+                        slots[slot] = null;
+                    }
+                    out.write(text);
+                    synchronized (this) {
+                        written++;
+                        notifyAll();
+                    }
+                }
+            } catch (IOException e) {
+                fail(e);
+            } catch (InterruptedException e) {
+                fail(new InterruptedIOException("Interrupted while writing results"));
+            }
+        }
+    }
+}
@@ -0,0 +1,576 @@
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Typed result of a CalculatorEngine operation. The numbers are available
+// through getters; toString() gives the text the calculator displays.
+public abstract class CalculationResult {
+
+    // The result's numbers by name, in display order
+    public abstract Map<String, Double> getValues();
+
+    // Formats for display. DecimalFormat is not thread-safe, so each call
+    // makes its own instance.
+    static String formatNumber(double value) {
+        return new DecimalFormat("#.##########").format(value);
+    }
+
+    static String formatMoney(double value) {
+        return new DecimalFormat("#.##").format(value);
+    }
+
+    // Amounts held in units of money are only available for results
+    // computed that way
+    static void requireMoney(Money money) {
+        if (money == null) throw new IllegalStateException("Not computed in units of money");
+    }
+
+    // Result of a basic or scientific expression
+    public static final class Value extends CalculationResult {
+        private final double value;
+
+        Value(double value) {
+            this.value = value;
+        }
+
+        public double getValue() {
+            return value;
+        }
+
+        @Override
+        public Map<String, Double> getValues() {
+            Map<String, Double> values = new LinkedHashMap<>();
+            values.put("value", value);
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            return formatNumber(value);
+        }
+    }
+
+    // Result of an expression evaluated in precision mode
+    public static final class Precise extends CalculationResult {
+        private final BigDecimal value;
+
+        Precise(BigDecimal value) {
+            this.value = value;
+        }
+
+        public BigDecimal getValue() {
+            return value;
+        }
+
+        @Override
+        public Map<String, Double> getValues() {
+            Map<String, Double> values = new LinkedHashMap<>();
+            values.put("value", value.doubleValue());
+            return values;
+        }
+
+        // Every significant digit, without trailing zeros; exponent notation
+        // only for very large or very small values
+        @Override
+        public String toString() {
+            BigDecimal stripped = value.stripTrailingZeros();
+            int magnitude = stripped.precision() - stripped.scale();
+            if (stripped.signum() == 0) return "0";
+            return magnitude > 40 || magnitude < -20 ? stripped.toString() : stripped.toPlainString();
+        }
+    }
+
+    public static final class Loan extends CalculationResult {
+        private final double monthlyPayment;
+        private final double totalInterest;
+        // Set for results computed in units of money, which are kept
+        // exactly in the long fields
+        private final Money money;
+        private final long monthlyPaymentUnits;
+        private final long totalInterestUnits;
+
+        Loan(double monthlyPayment, double totalInterest) {
+            this.monthlyPayment = monthlyPayment;
+            this.totalInterest = totalInterest;
+            this.money = null;
+            this.monthlyPaymentUnits = 0;
+            this.totalInterestUnits = 0;
+        }
+
+        Loan(long monthlyPayment, long totalInterest, Money money) {
+            this.monthlyPayment = 0;
+            this.totalInterest = 0;
+            this.money = money;
+            this.monthlyPaymentUnits = monthlyPayment;
+            this.totalInterestUnits = totalInterest;
+        }
+
+        public double getMonthlyPayment() {
+            return money != null ? money.toDouble(monthlyPaymentUnits) : monthlyPayment;
+        }
+
+        public double getTotalInterest() {
+            return money != null ? money.toDouble(totalInterestUnits) : totalInterest;
+        }
+
+        // The context of the exact amounts, or null for a double result
+        public Money getMoney() {
+            return money;
+        }
+
+        public long getMonthlyPaymentUnits() {
+            requireMoney(money);
+            return monthlyPaymentUnits;
+        }
+
+        public long getTotalInterestUnits() {
+            requireMoney(money);
+            return totalInterestUnits;
+        }
+
+        @Override
+        public Map<String, Double> getValues() {
+            Map<String, Double> values = new LinkedHashMap<>();
+            values.put("monthlyPayment", getMonthlyPayment());
+            values.put("totalInterest", getTotalInterest());
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            if (money != null) {
+                return "Monthly Payment: $" + money.format(monthlyPaymentUnits) +
+                       "\nTotal Interest: $" + money.format(totalInterestUnits);
+            }
+            return "Monthly Payment: $" + formatMoney(monthlyPayment) +
+                   "\nTotal Interest: $" + formatMoney(totalInterest);
+        }
+    }
+
+    public static final class Investment extends CalculationResult {
+        private final double futureValue;
+        private final double totalGain;
+        private final Money money;
+        private final long futureValueUnits;
+        private final long totalGainUnits;
+
+        Investment(double futureValue, double totalGain) {
+            this.futureValue = futureValue;
+            this.totalGain = totalGain;
+            this.money = null;
+            this.futureValueUnits = 0;
+            this.totalGainUnits = 0;
+        }
+
+        Investment(long futureValue, long totalGain, Money money) {
+            this.futureValue = 0;
+            this.totalGain = 0;
+            this.money = money;
+            this.futureValueUnits = futureValue;
+            this.totalGainUnits = totalGain;
+        }
+
+        public double getFutureValue() {
+            return money != null ? money.toDouble(futureValueUnits) : futureValue;
+        }
+
+        public double getTotalGain() {
+            return money != null ? money.toDouble(totalGainUnits) : totalGain;
+        }
+
+        public Money getMoney() {
+            return money;
+        }
+
+        public long getFutureValueUnits() {
+            requireMoney(money);
+            return futureValueUnits;
+        }
+
+        public long getTotalGainUnits() {
+            requireMoney(money);
+            return totalGainUnits;
+        }
+
+        @Override
+        public Map<String, Double> getValues() {
+            Map<String, Double> values = new LinkedHashMap<>();
+            values.put("futureValue", getFutureValue());
+            values.put("totalGain", getTotalGain());
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            if (money != null) {
+                return "Future Value: $" + money.format(futureValueUnits) +
+                       "\nTotal Gain: $" + money.format(totalGainUnits);
+            }
+            return "Future Value: $" + formatMoney(futureValue) +
+                   "\nTotal Gain: $" + formatMoney(totalGain);
+        }
+    }
+
+    // Distribution of final values from a Monte Carlo investment projection
+    public static final class Projection extends CalculationResult {
+        private final int paths;
+        private final double invested;
+        private final double mean;
+        private final double standardDeviation;
+        private final double percentile5;
+        private final double percentile25;
+        private final double median;
+        private final double percentile75;
+        private final double percentile95;
+        private final double probabilityOfLoss;
+
+        Projection(int paths, double invested, double mean, double standardDeviation,
+                   double percentile5, double percentile25, double median, double percentile75,
+                   double percentile95, double probabilityOfLoss) {
+            this.paths = paths;
+            this.invested = invested;
+            this.mean = mean;
+            this.standardDeviation = standardDeviation;
+            this.percentile5 = percentile5;
+            this.percentile25 = percentile25;
+            this.median = median;
+            this.percentile75 = percentile75;
+            this.percentile95 = percentile95;
+            this.probabilityOfLoss = probabilityOfLoss;
+        }
+
+        public int getPaths() {
+            return paths;
+        }
+
+        // Principal plus all contributions
+        public double getInvested() {
+            return invested;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getStandardDeviation() {
+            return standardDeviation;
+        }
+
+        public double getPercentile5() {
+            return percentile5;
+        }
+
+        public double getPercentile25() {
+            return percentile25;
+        }
+
+        public double getMedian() {
+            return median;
+        }
+
+        public double getPercentile75() {
+            return percentile75;
+        }
+
+        public double getPercentile95() {
+            return percentile95;
+        }
+
+        // Fraction of paths ending below the amount invested
+        public double getProbabilityOfLoss() {
+            return probabilityOfLoss;
+        }
+
+        @Override
+        public Map<String, Double> getValues() {
+            Map<String, Double> values = new LinkedHashMap<>();
+            values.put("paths", (double) paths);
+            values.put("invested", invested);
+            values.put("mean", mean);
+            values.put("standardDeviation", standardDeviation);
+            values.put("percentile5", percentile5);
+            values.put("percentile25", percentile25);
+            values.put("median", median);
+            values.put("percentile75", percentile75);
+            values.put("percentile95", percentile95);
+            values.put("probabilityOfLoss", probabilityOfLoss);
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            return "Paths: " + paths +
+                   "\nInvested: $" + formatMoney(invested) +
+                   "\nMean Value: $" + formatMoney(mean) +
+                   "\n5th Percentile: $" + formatMoney(percentile5) +
+                   "\n25th Percentile: $" + formatMoney(percentile25) +
+                   "\nMedian: $" + formatMoney(median) +
+                   "\n75th Percentile: $" + formatMoney(percentile75) +
+                   "\n95th Percentile: $" + formatMoney(percentile95) +
+                   "\nChance of Loss: " + formatNumber(Math.round(probabilityOfLoss * 10000) / 100.0) + "%";
+        }
+    }
+
+    public static final class Conversion extends CalculationResult {
+        private final double value;
+        private final String fromUnit;
+        private final double result;
+        private final String toUnit;
+
+        Conversion(double value, String fromUnit, double result, String toUnit) {
+            this.value = value;
+            this.fromUnit = fromUnit;
+            this.result = result;
+            this.toUnit = toUnit;
+        }
+
+        public double getValue() {
+            return value;
+        }
+
+        public String getFromUnit() {
+            return fromUnit;
+        }
+
+        public double getResult() {
+            return result;
+        }
+
+        public String getToUnit() {
+            return toUnit;
+        }
+
+        @Override
+        public Map<String, Double> getValues() {
+            Map<String, Double> values = new LinkedHashMap<>();
+            values.put("value", value);
+            values.put("result", result);
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            return value + " " + fromUnit + " = " + formatNumber(result) + " " + toUnit;
+        }
+    }
+
+    // A single named statistic such as "Mean"
+    public static final class Statistic extends CalculationResult {
+        private final String name;
+        private final double value;
+
+        Statistic(String name, double value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getValue() {
+            return value;
+        }
+
+        @Override
+        public Map<String, Double> getValues() {
+            Map<String, Double> values = new LinkedHashMap<>();
+            values.put(name, value);
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + formatNumber(value);
+        }
+    }
+
+    // One-pass summary of a stream of numbers. The median and percentiles
+    // come from a quantile sketch and are approximate; without a sketch they
+    // are NaN and left out of the text.
+    public static final class Summary extends CalculationResult {
+        private final long count;
+        private final double sum;
+        private final double mean;
+        private final double standardDeviation;
+        private final double minimum;
+        private final double maximum;
+        private final double median;
+        private final double percentile90;
+        private final double percentile99;
+
+        Summary(StatisticsAccumulator stats, QuantileSketch sketch) {
+            this(stats.getCount(), stats.getSum(), stats.getMean(), stats.getStandardDeviation(),
+                 stats.getMinimum(), stats.getMaximum(),
+                 sketch != null ? sketch.quantile(0.5) : Double.NaN,
+                 sketch != null ? sketch.quantile(0.9) : Double.NaN,
+                 sketch != null ? sketch.quantile(0.99) : Double.NaN);
+        }
+
+        Summary(long count, double sum, double mean, double standardDeviation, double minimum, double maximum,
+                double median, double percentile90, double percentile99) {
+            this.count = count;
+            this.sum = sum;
+            this.mean = mean;
+            this.standardDeviation = standardDeviation;
+            this.minimum = minimum;
+            this.maximum = maximum;
+            this.median = median;
+            this.percentile90 = percentile90;
+            this.percentile99 = percentile99;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getStandardDeviation() {
+            return standardDeviation;
+        }
+
+        public double getMinimum() {
+            return minimum;
+        }
+
+        public double getMaximum() {
+            return maximum;
+        }
+
+        public double getRange() {
+            return maximum - minimum;
+        }
+
+        public double getMedian() {
+            return median;
+        }
+
+        public double getPercentile90() {
+            return percentile90;
+        }
+
+        public double getPercentile99() {
+            return percentile99;
+        }
+
+        @Override
+        public Map<String, Double> getValues() {
+            Map<String, Double> values = new LinkedHashMap<>();
+            values.put("count", (double) count);
+            values.put("sum", sum);
+            values.put("mean", mean);
+            values.put("standardDeviation", standardDeviation);
+            values.put("minimum", minimum);
+            values.put("maximum", maximum);
+            values.put("range", getRange());
+            if (!Double.isNaN(median)) {
+                values.put("median", median);
+                values.put("percentile90", percentile90);
+                values.put("percentile99", percentile99);
+            }
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder();
+            result.append("Summary:\n");
+            result.append("Count: ").append(count).append("\n");
+            result.append("Sum: ").append(formatNumber(sum)).append("\n");
+            result.append("Mean: ").append(formatNumber(mean)).append("\n");
+            result.append("Standard Deviation: ").append(formatNumber(standardDeviation)).append("\n");
+            result.append("Minimum: ").append(formatNumber(minimum)).append("\n");
+            result.append("Maximum: ").append(formatNumber(maximum)).append("\n");
+            result.append("Range: ").append(formatNumber(getRange()));
+            if (!Double.isNaN(median)) {
+                result.append("\nMedian (approx.): ").append(formatNumber(median));
+                result.append("\n90th Percentile (approx.): ").append(formatNumber(percentile90));
+                result.append("\n99th Percentile (approx.): ").append(formatNumber(percentile99));
+            }
+            return result.toString();
+        }
+    }
+
+    // Full analysis of a list of numbers
+    public static final class Statistics extends CalculationResult {
+        private final long count;
+        private final double mean;
+        private final double median;
+        private final double standardDeviation;
+        private final double minimum;
+        private final double maximum;
+
+        Statistics(long count, double mean, double median, double standardDeviation,
+                   double minimum, double maximum) {
+            this.count = count;
+            this.mean = mean;
+            this.median = median;
+            this.standardDeviation = standardDeviation;
+            this.minimum = minimum;
+            this.maximum = maximum;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getMedian() {
+            return median;
+        }
+
+        public double getStandardDeviation() {
+            return standardDeviation;
+        }
+
+        public double getMinimum() {
+            return minimum;
+        }
+
+        public double getMaximum() {
+            return maximum;
+        }
+
+        public double getRange() {
+            return maximum - minimum;
+        }
+
+        @Override
+        public Map<String, Double> getValues() {
+            Map<String, Double> values = new LinkedHashMap<>();
+            values.put("count", (double) count);
+            values.put("mean", mean);
+            values.put("median", median);
+            values.put("standardDeviation", standardDeviation);
+            values.put("minimum", minimum);
+            values.put("maximum", maximum);
+            values.put("range", getRange());
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder();
+            result.append("Statistical Analysis:\n");
+            result.append("Count: ").append(count).append("\n");
+            result.append("Mean: ").append(formatNumber(mean)).append("\n");
+            result.append("Median: ").append(formatNumber(median)).append("\n");
+            result.append("Standard Deviation: ").append(formatNumber(standardDeviation)).append("\n");
+            result.append("Minimum: ").append(formatNumber(minimum)).append("\n");
+            result.append("Maximum: ").append(formatNumber(maximum)).append("\n");
+            result.append("Range: ").append(formatNumber(getRange()));
+            return result.toString();
+        }
+    }
+}
@@ -0,0 +1,617 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.DoubleConsumer;
+
+// All of the calculator's arithmetic, independent of Swing. The GUI, the
+// batch runner and any embedding service go through this class.
+//
+// An engine is safe to share between threads: it keeps no per-call state and
+// its expression caches are concurrent.
+public class CalculatorEngine {
+
+    public enum Mode {
+        BASIC, SCIENTIFIC, FINANCIAL, UNIT_CONVERSION, STATISTICS
+    }
+
+    private static final long PROJECTION_SEED = 1;
+
+    private final ExpressionCache expressionCache;
+    private final ExpressionCache scientificCache;
+    // Loans and investments in fixed-point units of money, or null for double
+    private final Money money;
+
+    public CalculatorEngine() {
+        this(1024);
+    }
+
+    public CalculatorEngine(int cacheSize) {
+        this(cacheSize, null);
+    }
+
+    // With a Money context, loan and investment amounts are parsed, computed
+    // and totalled exactly in its units and rounding mode
+    public CalculatorEngine(int cacheSize, Money money) {
+        this.money = money;
+        expressionCache = new ExpressionCache(cacheSize, ExpressionCache.Policy.LRU);
+        scientificCache = new ExpressionCache(cacheSize, ExpressionCache.Policy.LRU, true);
+    }
+
+    // Runs a calculation of any kind, telling them apart by their syntax:
+    // "loan ...", "10 meter to foot", "mean 1,2,3" or an expression
+    public CalculationResult calculate(String input) {
+        return calculate(detectMode(input), input);
+    }
+
+    static Mode detectMode(String input) {
+        String trimmed = input.trim();
+        int space = 0;
+        while (space < trimmed.length() && !Character.isWhitespace(trimmed.charAt(space))) space++;
+        String first = trimmed.substring(0, space).toLowerCase();
+
+        switch (first) {
+            case "loan": case "investment": case "projection": case "npv": case "irr": case "xirr":
+                return Mode.FINANCIAL;
+            case "mean": case "average": case "median": case "percentile": case "stddev": case "stdev":
+                return Mode.STATISTICS;
+            default:
+                break;
+        }
+        // A bare list such as "1, 2, 3" is analyzed like the statistics calculator does
+        if (isNumberList(trimmed)) {
+            return Mode.STATISTICS;
+        }
+        // "<value> <unit> to <unit>"; only lines mentioning "to" pay for the split
+        String lower = trimmed.toLowerCase();
+        if (lower.contains("to")) {
+            if (conversionSeparator(lower.split("\\s+")) > 0) {
+                return Mode.UNIT_CONVERSION;
+            }
+        }
+        return Mode.SCIENTIFIC;
+    }
+
+    // Index of the "to" in "<value> <unit...> to <unit...>", or -1
+    private static int conversionSeparator(String[] parts) {
+        for (int i = 2; i < parts.length - 1; i++) {
+            if (parts[i].equals("to")) return i;
+        }
+        return -1;
+    }
+
+    // Only digits, signs, points and separators, with at least one , or ;
+    private static boolean isNumberList(String input) {
+        boolean separator = false;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == ',' || c == ';') {
+                separator = true;
+            } else if (!((c >= '0' && c <= '9') || c == '.' || c == '-' || c == '+'
+                         || c == 'e' || c == 'E' || Character.isWhitespace(c))) {
+                return false;
+            }
+        }
+        return separator;
+    }
+
+    public CalculationResult calculate(Mode mode, String input) {
+        switch (mode) {
+            case SCIENTIFIC:
+                return evaluateScientific(input);
+            case FINANCIAL:
+                return calculateFinancial(input);
+            case UNIT_CONVERSION:
+                return convertUnits(input, null);
+            case STATISTICS:
+                return calculateStatistics(input);
+            case BASIC:
+            default:
+                return evaluateBasic(input);
+        }
+    }
+
+    public CalculationResult.Value evaluateBasic(String expression) {
+        try {
+            return new CalculationResult.Value(evaluateWithBindings(expression, expressionCache));
+        } catch (Exception e) {
+            throw new RuntimeException("Invalid expression: " + expression);
+        }
+    }
+
+    public CalculationResult.Value evaluateScientific(String expression) {
+        try {
+            // Functions (sin, sqrt, log, ...), constants (pi, e) and the ! and ° operators
+            // are part of the expression grammar, so they combine freely: sin(30)+cos(60)*2
+            return new CalculationResult.Value(evaluateWithBindings(expression, scientificCache));
+        } catch (Exception e) {
+            throw new RuntimeException("Invalid scientific expression: " + expression);
+        }
+    }
+
+    // Precision mode: the same expressions, cache and bindings as the
+    // scientific calculator, evaluated in BigDecimal to the given number of
+    // significant digits. The double path is not involved.
+    public CalculationResult.Precise evaluatePrecise(String expression, int digits) {
+        MathContext context = new MathContext(digits, RoundingMode.HALF_EVEN);
+        try {
+            String[] parts = expression.split(";");
+            CompiledExpression formula = scientificCache.get(parts[0]);
+            Map<String, BigDecimal> values = new HashMap<>();
+            for (int i = 1; i < parts.length; i++) {
+                String[] binding = parts[i].split("=", 2);
+                values.put(scientificCache.normalize(binding[0]), preciseBinding(binding[1], context));
+            }
+            return new CalculationResult.Precise(formula.evaluate(context, values));
+        } catch (Exception e) {
+            throw new RuntimeException("Invalid expression: " + expression
+                                       + (e.getMessage() != null ? " (" + e.getMessage() + ")" : ""));
+        }
+    }
+
+    // Variables are bound after the formula: "price*qty*(1+tax); price=10; qty=3; tax=0.2"
+    private double evaluateWithBindings(String expression, ExpressionCache cache) {
+        String[] parts = expression.split(";");
+        CompiledExpression formula = cache.get(parts[0]);
+        Map<String, Double> values = new HashMap<>();
+        for (int i = 1; i < parts.length; i++) {
+            String[] binding = parts[i].split("=", 2);
+            values.put(cache.normalize(binding[0]), binding(binding[1], cache));
+        }
+        return formula.evaluate(values);
+    }
+
+    // Binding values change from row to row ("x=1.37", "x=1.38", ...), so
+    // they stay out of the cache, where they would evict the formulas it is
+    // there for: plain numbers are parsed directly and anything else is
+    // compiled for this one use
+    private static double binding(String source, ExpressionCache cache) {
+        String value = source.trim();
+        if (isNumber(value)) return NumberParser.parse(value);
+        return new ExpressionEvaluator().compile(cache.normalize(value)).evaluate();
+    }
+
+    private BigDecimal preciseBinding(String source, MathContext context) {
+        String value = source.trim();
+        if (isNumber(value)) return new BigDecimal(value).round(context);
+        return new ExpressionEvaluator().compile(scientificCache.normalize(value)).evaluate(context);
+    }
+
+    // An optional sign, then digits and points only, as the expression
+    // grammar reads a number
+    private static boolean isNumber(String text) {
+        int i = text.startsWith("-") || text.startsWith("+") ? 1 : 0;
+        boolean digits = false;
+        for (; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') digits = true;
+            else if (c != '.') return false;
+        }
+        return digits;
+    }
+
+    public CompiledExpression compile(String expression) {
+        return expressionCache.get(expression);
+    }
+
+    public CalculationResult calculateFinancial(String input) {
+        String[] parts = input.toLowerCase().split("\\s+");
+
+        try {
+            if (parts.length >= 4 && parts[0].equals("loan")) {
+                double rate = NumberParser.parse(parts[2]) / 100 / 12; // Monthly rate
+                int months = (int)(NumberParser.parse(parts[3]) * 12);
+
+                if (money != null) return calculateLoanPayment(money.parse(parts[1]), rate, months, money);
+                return calculateLoanPayment(NumberParser.parse(parts[1]), rate, months);
+            }
+
+            if (parts.length >= 4 && parts[0].equals("investment")) {
+                double rate = NumberParser.parse(parts[2]) / 100;
+                int years = Integer.parseInt(parts[3]);
+
+                if (money != null) return calculateInvestment(money.parse(parts[1]), rate, years, money);
+                return calculateInvestment(NumberParser.parse(parts[1]), rate, years);
+            }
+
+            // "projection amount rate years volatility [contribution] [paths]", rates in percent
+            if (parts.length >= 5 && parts[0].equals("projection")) {
+                double principal = NumberParser.parse(parts[1]);
+                double rate = NumberParser.parse(parts[2]) / 100;
+                int years = Integer.parseInt(parts[3]);
+                double volatility = NumberParser.parse(parts[4]) / 100;
+                double contribution = parts.length > 5 ? NumberParser.parse(parts[5]) : 0;
+                int paths = parts.length > 6 ? Integer.parseInt(parts[6]) : MonteCarloProjection.DEFAULT_PATHS;
+
+                return projectInvestment(principal, rate, volatility, contribution, years, paths);
+            }
+
+            // "npv rate flow0 flow1 ...", "irr flow0 flow1 ...",
+            // "xirr date amount date amount ..."; rates in percent
+            if (parts.length >= 2 && (parts[0].equals("npv") || parts[0].equals("irr") || parts[0].equals("xirr"))) {
+                return calculateCashFlows(parts[0], input.trim().substring(parts[0].length()).trim());
+            }
+
+            throw new RuntimeException("Use format: 'loan amount rate years', 'investment amount rate years', "
+                                       + "'projection amount rate years volatility [contribution] [paths]', "
+                                       + "'npv rate flows', 'irr flows' or 'xirr date amount ...'");
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid number format in input: " + input);
+        } catch (ArithmeticException e) {
+            throw new RuntimeException("Amount out of range in input: " + input);
+        }
+    }
+
+    public CalculationResult.Loan calculateLoanPayment(double principal, double monthlyRate, int months) {
+        double payment = AmortizationSchedule.monthlyPayment(principal, monthlyRate, months);
+        return new CalculationResult.Loan(payment, (payment * months) - principal);
+    }
+
+    // principal in units of money; the total interest is the exact sum of
+    // the rounded monthly interest
+    public CalculationResult.Loan calculateLoanPayment(long principal, double monthlyRate, int months, Money money) {
+        if (months < 1) throw new RuntimeException("Loan term must be at least one month");
+        long payment = AmortizationSchedule.monthlyPayment(money, principal, monthlyRate, months);
+        long interest = AmortizationSchedule.totalInterest(money, principal, monthlyRate, months, payment);
+        return new CalculationResult.Loan(payment, interest, money);
+    }
+
+    private CalculationResult calculateCashFlows(String command, String flows) {
+        switch (command) {
+            case "npv": {
+                double[] numbers = parseNumberList(flows, true);
+                if (numbers.length < 2) throw new RuntimeException("Use format: 'npv rate flow0 flow1 ...'");
+                double rate = numbers[0] / 100;
+                double[] cashFlows = Arrays.copyOfRange(numbers, 1, numbers.length);
+                return new CalculationResult.Statistic("NPV", CashFlows.npv(rate, cashFlows));
+            }
+            case "irr":
+                return new CalculationResult.Statistic("IRR (%)", CashFlows.irr(parseNumberList(flows, true)) * 100);
+            default: {
+                String[] tokens = flows.split("[\\s,;]+");
+                if (tokens.length % 2 != 0) throw new RuntimeException("Use format: 'xirr date amount date amount ...'");
+                double[] amounts = new double[tokens.length / 2];
+                double[] days = new double[tokens.length / 2];
+                try {
+                    for (int i = 0; i < amounts.length; i++) {
+                        days[i] = LocalDate.parse(tokens[2 * i]).toEpochDay();
+                        amounts[i] = NumberParser.parse(tokens[2 * i + 1]);
+                    }
+                } catch (DateTimeParseException e) {
+                    throw new RuntimeException("Invalid date in input: " + e.getParsedString() + " (use yyyy-mm-dd)");
+                }
+                return new CalculationResult.Statistic("XIRR (%)", CashFlows.xirr(amounts, days) * 100);
+            }
+        }
+    }
+
+    // Same seed every time, so a projection can be repeated exactly
+    public CalculationResult.Projection projectInvestment(double principal, double rate, double volatility,
+                                                          double contribution, int years, int paths) {
+        return new MonteCarloProjection(principal, rate, volatility, contribution, years)
+            .project(paths, PROJECTION_SEED);
+    }
+
+    // Whole portfolios as columns, priced in parallel; see PortfolioPricer
+    public void priceLoans(double[] principal, double[] monthlyRate, double[] months,
+                           double[] payment, double[] totalInterest) {
+        PortfolioPricer.common().priceLoans(principal, monthlyRate, months, payment, totalInterest);
+    }
+
+    public void priceInvestments(double[] principal, double[] rate, double[] years,
+                                 double[] futureValue, double[] gain) {
+        PortfolioPricer.common().priceInvestments(principal, rate, years, futureValue, gain);
+    }
+
+    // "loan amount rate years" as a month-by-month schedule, read row by row
+    // or written out with AmortizationSchedule.writeCsv; in units of money
+    // when the engine has a Money context
+    public AmortizationSchedule amortize(String input) {
+        String[] parts = input.trim().toLowerCase().split("\\s+");
+        if (parts.length < 4 || !parts[0].equals("loan")) {
+            throw new RuntimeException("Use format: 'loan amount rate years'");
+        }
+        try {
+            double rate = NumberParser.parse(parts[2]) / 100 / 12;
+            int months = (int)(NumberParser.parse(parts[3]) * 12);
+            if (money != null) return new AmortizationSchedule(money, money.parse(parts[1]), rate, months);
+            return new AmortizationSchedule(NumberParser.parse(parts[1]), rate, months);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid number format in input: " + input);
+        } catch (ArithmeticException e) {
+            throw new RuntimeException("Amount out of range in input: " + input);
+        }
+    }
+
+    public CalculationResult.Investment calculateInvestment(double principal, double rate, int years) {
+        double futureValue = principal * Math.pow(1 + rate, years);
+        return new CalculationResult.Investment(futureValue, futureValue - principal);
+    }
+
+    public CalculationResult.Investment calculateInvestment(long principal, double rate, int years, Money money) {
+        long futureValue = money.multiply(principal, Math.pow(1 + rate, years));
+        return new CalculationResult.Investment(futureValue, money.subtract(futureValue, principal), money);
+    }
+
+    // Parses "value fromUnit to toUnit"; units may be several words, as in
+    // "2 cubic meter to liter". The category (Length, Weight, ...) may be
+    // null, in which case it comes from the units.
+    public CalculationResult.Conversion convertUnits(String input, String category) {
+        String[] parts = input.toLowerCase().trim().split("\\s+");
+
+        try {
+            int to = conversionSeparator(parts);
+            if (to > 0) {
+                double value = NumberParser.parse(parts[0]);
+                String fromUnit = String.join(" ", Arrays.copyOfRange(parts, 1, to));
+                String toUnit = String.join(" ", Arrays.copyOfRange(parts, to + 1, parts.length));
+
+                double result = convert(value, fromUnit, toUnit, category);
+                return new CalculationResult.Conversion(value, fromUnit, result, toUnit);
+            }
+
+            throw new RuntimeException("Use format: 'value fromUnit to toUnit' (e.g., '10 meter to foot')");
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid number format in input: " + input);
+        }
+    }
+
+    // With a category (Length, Weight, ...), both units must belong to it;
+    // without one, the units' own category is used. Compound units such as
+    // "km/h" or "kg/m3" convert to any unit of the same dimension.
+    public double convert(double value, String fromUnit, String toUnit, String category) {
+        UnitRegistry units = UnitRegistry.standard();
+        if (category == null && isCompound(fromUnit, toUnit)) {
+            return units.compound(fromUnit).convert(value, units.compound(toUnit));
+        }
+        return units.convert(value, unitId(fromUnit, category), unitId(toUnit, category));
+    }
+
+    public double convert(double value, String fromUnit, String toUnit) {
+        return convert(value, fromUnit, toUnit, null);
+    }
+
+    // Converts a whole column of readings; out must be at least as long as
+    // values and may be the same array
+    public void convert(double[] values, String fromUnit, String toUnit, double[] out) {
+        if (out.length < values.length) {
+            throw new IllegalArgumentException("Output array shorter than input");
+        }
+        UnitRegistry units = UnitRegistry.standard();
+        if (isCompound(fromUnit, toUnit)) {
+            double scale = units.compound(fromUnit).scaleTo(units.compound(toUnit));
+            for (int i = 0; i < values.length; i++) {
+                out[i] = values[i] * scale;
+            }
+            return;
+        }
+        units.convert(values, 0, out, 0, values.length, unitId(fromUnit, null), unitId(toUnit, null));
+    }
+
+    public double[] convert(double[] values, String fromUnit, String toUnit) {
+        double[] out = new double[values.length];
+        convert(values, fromUnit, toUnit, out);
+        return out;
+    }
+
+    // Either unit is not a plain registry unit
+    private static boolean isCompound(String fromUnit, String toUnit) {
+        UnitRegistry units = UnitRegistry.standard();
+        return units.find(fromUnit) < 0 || units.find(toUnit) < 0;
+    }
+
+    private static int unitId(String unit, String category) {
+        UnitRegistry units = UnitRegistry.standard();
+        int id = units.find(unit);
+        if (id < 0 || (category != null && !units.category(id).equals(category))) {
+            throw new RuntimeException("Unknown " + (category != null ? category.toLowerCase() + " " : "")
+                                       + "unit: " + unit);
+        }
+        return id;
+    }
+
+    public CalculationResult calculateStatistics(String input) {
+        String[] parts = input.toLowerCase().split("\\s+");
+
+        if (parts[0].equals("mean") || parts[0].equals("average")) {
+            StatisticsAccumulator stats =
+                ParallelStatistics.common().accumulate(parseNumberList(input.substring(parts[0].length()).trim()));
+            return new CalculationResult.Statistic("Mean", stats.getMean());
+        }
+
+        if (parts[0].equals("median")) {
+            double[] numbers = parseNumberList(input.substring(parts[0].length()).trim());
+            return new CalculationResult.Statistic("Median", percentile(numbers, 0.5));
+        }
+
+        // "percentile 90 1, 2, 3, ..."
+        if (parts[0].equals("percentile")) {
+            if (parts.length < 3) {
+                throw new RuntimeException("Invalid percentile format. Use: percentile <p> <numbers>");
+            }
+            double p = NumberParser.parse(parts[1]);
+            if (!(p >= 0 && p <= 100)) {
+                throw new RuntimeException("Percentile must be between 0 and 100");
+            }
+            int start = input.toLowerCase().indexOf(parts[1], parts[0].length()) + parts[1].length();
+            double[] numbers = parseNumberList(input.substring(start).trim());
+            return new CalculationResult.Statistic(ordinal(p) + " Percentile", percentile(numbers, p / 100));
+        }
+
+        if (parts[0].equals("stddev") || parts[0].equals("stdev")) {
+            StatisticsAccumulator stats =
+                ParallelStatistics.common().accumulate(parseNumberList(input.substring(parts[0].length()).trim()));
+            return new CalculationResult.Statistic("Standard Deviation", stats.getStandardDeviation());
+        }
+
+        // Default: assume it's a list of numbers to analyze
+        double[] numbers = parseNumberList(input);
+        return analyzeNumbers(numbers);
+    }
+
+    // Numbers separated by whitespace, commas or semicolons, parsed in place
+    // into a primitive array
+    static double[] parseNumberList(String input) {
+        return parseNumberList(input, false);
+    }
+
+    // Strict lists reject anything that is not a number instead of skipping
+    // it. Cash flows need this: a skipped typo would move every later flow
+    // one period earlier.
+    static double[] parseNumberList(String input, boolean strict) {
+        double[] numbers = new double[16];
+        int count = 0;
+        int length = input.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && isListSeparator(input.charAt(i))) i++;
+            int start = i;
+            while (i < length && !isListSeparator(input.charAt(i))) i++;
+            if (start == i) break;
+            try {
+                double value = NumberParser.parse(input, start, i);
+                if (count == numbers.length) numbers = Arrays.copyOf(numbers, count * 2);
+                numbers[count++] = value;
+            } catch (NumberFormatException e) {
+                if (strict) throw new RuntimeException("Not a number: " + input.substring(start, i));
+                // Skip non-numeric parts
+            }
+        }
+
+        if (count == 0) {
+            throw new RuntimeException("No valid numbers found in input");
+        }
+
+        return Arrays.copyOf(numbers, count);
+    }
+
+    private static boolean isListSeparator(char c) {
+        return c == ',' || c == ';' || Character.isWhitespace(c);
+    }
+
+    // Small lists are ours to reorder in place; large ones are split across
+    // the common ForkJoinPool
+    private static double percentile(double[] numbers, double p) {
+        return numbers.length < ParallelStatistics.PARALLEL_THRESHOLD
+            ? Quantiles.percentileInPlace(numbers, 0, numbers.length, p)
+            : ParallelStatistics.common().percentile(numbers, p);
+    }
+
+    // 90 -> "90th", 1 -> "1st", 99.9 -> "99.9th"
+    private static String ordinal(double p) {
+        String number = CalculationResult.formatNumber(p);
+        if (p != Math.rint(p)) return number + "th";
+        long n = (long) p;
+        if (n % 100 >= 11 && n % 100 <= 13) return number + "th";
+        switch ((int) (n % 10)) {
+            case 1: return number + "st";
+            case 2: return number + "nd";
+            case 3: return number + "rd";
+            default: return number + "th";
+        }
+    }
+
+    public CalculationResult.Statistics analyzeNumbers(double[] numbers) {
+        if (numbers.length >= ParallelStatistics.PARALLEL_THRESHOLD) {
+            return ParallelStatistics.common().analyze(numbers);
+        }
+
+        // Mean, standard deviation, min and max in one pass
+        StatisticsAccumulator stats = new StatisticsAccumulator();
+        stats.addAll(numbers);
+
+        // Median by selection, without sorting a copy
+        double median = Quantiles.median(numbers);
+
+        return new CalculationResult.Statistics(numbers.length, stats.getMean(), median,
+                                                stats.getStandardDeviation(),
+                                                stats.getMinimum(), stats.getMaximum());
+    }
+
+    // Summarizes numbers read from a stream of any size without holding them
+    // in memory. Numbers are separated by whitespace, commas or semicolons;
+    // other tokens are skipped, as in parseNumberList.
+    // The median and percentiles are approximate (see QuantileSketch).
+    public CalculationResult.Summary summarize(Reader in) throws IOException {
+        StatisticsAccumulator stats = new StatisticsAccumulator();
+        QuantileSketch sketch = new QuantileSketch();
+        accumulate(in, value -> {
+            stats.add(value);
+            sketch.add(value);
+        });
+        if (stats.getCount() == 0) {
+            throw new RuntimeException("No valid numbers found in input");
+        }
+        return stats.toResult(sketch);
+    }
+
+    // Summarizes a text or raw-double file through a memory mapping; see
+    // MappedNumberFile for the formats. A null format is detected.
+    public CalculationResult.Summary summarize(Path file, MappedNumberFile.Format format) throws IOException {
+        StatisticsAccumulator stats = new StatisticsAccumulator();
+        QuantileSketch sketch = new QuantileSketch();
+        mapFile(file, format).forEach(value -> {
+            stats.add(value);
+            sketch.add(value);
+        });
+        if (stats.getCount() == 0) {
+            throw new RuntimeException("No valid numbers found in " + file);
+        }
+        return stats.toResult(sketch);
+    }
+
+    // Full analysis with an exact median; the numbers are loaded into one
+    // double[], so the file must fit in the heap
+    public CalculationResult.Statistics analyzeFile(Path file, MappedNumberFile.Format format) throws IOException {
+        double[] numbers = mapFile(file, format).toArray();
+        if (numbers.length == 0) {
+            throw new RuntimeException("No valid numbers found in " + file);
+        }
+        return analyzeNumbers(numbers);
+    }
+
+    static MappedNumberFile mapFile(Path file, MappedNumberFile.Format format) throws IOException {
+        return new MappedNumberFile(file, format != null ? format : MappedNumberFile.detectFormat(file));
+    }
+
+    static void accumulate(Reader in, DoubleConsumer stats) throws IOException {
+        char[] buffer = new char[1 << 16];
+        char[] token = new char[64];
+        CharBuffer view = CharBuffer.wrap(token);
+        int length = 0;
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            for (int i = 0; i < read; i++) {
+                char c = buffer[i];
+                if (isListSeparator(c)) {
+                    addToken(view, length, stats);
+                    length = 0;
+                } else {
+                    if (length == token.length) {
+                        token = Arrays.copyOf(token, length * 2);
+                        view = CharBuffer.wrap(token);
+                    }
+                    token[length++] = c;
+                }
+            }
+        }
+        addToken(view, length, stats);
+    }
+
+    private static void addToken(CharSequence token, int length, DoubleConsumer stats) {
+        if (length == 0) return;
+        try {
+            stats.accept(NumberParser.parse(token, 0, length));
+        } catch (NumberFormatException e) {
+            // Skip non-numeric parts
+        }
+    }
+}
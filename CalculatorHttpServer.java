@@ -0,0 +1,249 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+// Small HTTP/JSON front end for CalculatorEngine, built on the JDK's own
+// HTTP server. Every request runs on its own virtual thread, so slow clients
+// do not tie up a worker pool.
+//
+//   POST /calculate   {"input": "loan 100000 5 30", "mode": "financial"}
+//   GET  /calculate?input=2%2B3*4
+//   POST /batch       ["2+3*4", {"input": "10 meter to foot"}, ...]
+//   GET  /health
+//
+// "mode" is optional (basic, scientific, financial, unit, statistics); without
+// it the kind of calculation is detected from the input. A successful
+// calculation answers {"input", "mode", "result", "values"}, where "result"
+// is the text the GUI would show and "values" holds the numbers by name.
+// The items of a /batch request are calculated in parallel chunks on the
+// common ForkJoinPool and answered in request order. Anything a handler
+// throws becomes a 500 response, so a client is never left waiting.
+//
+// Usage: java CalculatorHttpServer [--port N] [--host ADDRESS]
+public class CalculatorHttpServer {
+
+    private static final int MAX_BODY = 16 << 20;
+    // Batch items per parallel task
+    private static final int BATCH_CHUNK = 256;
+
+    private final CalculatorEngine engine;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public CalculatorHttpServer(CalculatorEngine engine, InetSocketAddress address) throws IOException {
+        this.engine = engine;
+        this.server = HttpServer.create(address, 0);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/calculate", guarded(this::handleCalculate));
+        server.createContext("/batch", guarded(this::handleBatch));
+        server.createContext("/health", guarded(exchange -> send(exchange, 200, "{\"status\":\"ok\"}")));
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 8080;
+        InetAddress host = InetAddress.getLoopbackAddress();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--host":
+                    host = InetAddress.getByName(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        CalculatorHttpServer server = new CalculatorHttpServer(new CalculatorEngine(), new InetSocketAddress(host, port));
+        server.start();
+        System.err.println("Calculator service listening on http://" + host.getHostAddress() + ":" + server.getPort());
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Answers 500 for anything the handler throws, Errors included, and
+    // closes the exchange
+    private static HttpHandler guarded(HttpHandler handler) {
+        return exchange -> {
+            try {
+                handler.handle(exchange);
+            } catch (Throwable t) {
+                try {
+                    send(exchange, 500, error("Internal error: " + t.getClass().getSimpleName()));
+                } catch (IOException | RuntimeException e) {
+                    // The response had already started; closing is all that is left
+                } finally {
+                    exchange.close();
+                }
+            }
+        };
+    }
+
+    private void handleCalculate(HttpExchange exchange) throws IOException {
+        try {
+            Map<String, Object> response;
+            if (exchange.getRequestMethod().equals("GET")) {
+                Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+                response = calculate(query.get("input"), query.get("mode"));
+            } else if (exchange.getRequestMethod().equals("POST")) {
+                response = calculate(Json.parse(readBody(exchange)));
+            } else {
+                send(exchange, 405, error("Use GET or POST"));
+                return;
+            }
+            send(exchange, response.containsKey("error") ? 400 : 200, Json.write(response));
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, error("Invalid request: " + e.getMessage()));
+        }
+    }
+
+    private void handleBatch(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            send(exchange, 405, error("Use POST with a JSON array of calculations"));
+            return;
+        }
+        try {
+            Object body = Json.parse(readBody(exchange));
+            if (!(body instanceof List)) {
+                send(exchange, 400, error("Expected a JSON array of calculations"));
+                return;
+            }
+            // Failed items report their own error; the batch as a whole still succeeds
+            List<?> items = (List<?>) body;
+            Object[] results = new Object[items.size()];
+            int chunks = (items.size() + BATCH_CHUNK - 1) / BATCH_CHUNK;
+            if (chunks > 0) {
+                ChunkedTasks.forEachChunk(ForkJoinPool.commonPool(), chunks, chunk -> {
+                    int end = Math.min(items.size(), (chunk + 1) * BATCH_CHUNK);
+                    for (int i = chunk * BATCH_CHUNK; i < end; i++) {
+                        results[i] = calculate(items.get(i));
+                    }
+                });
+            }
+            send(exchange, 200, Json.write(Arrays.asList(results)));
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, error("Invalid request: " + e.getMessage()));
+        }
+    }
+
+    // Accepts a bare string or {"input": ..., "mode": ...}
+    private Map<String, Object> calculate(Object request) {
+        if (request instanceof String) {
+            return calculate((String) request, null);
+        }
+        if (request instanceof Map) {
+            Map<?, ?> fields = (Map<?, ?>) request;
+            Object input = fields.get("input");
+            Object mode = fields.get("mode");
+            return calculate(input instanceof String ? (String) input : null,
+                             mode instanceof String ? (String) mode : null);
+        }
+        return errorResponse(null, "Expected a string or an object with an \"input\" field");
+    }
+
+    private Map<String, Object> calculate(String input, String modeName) {
+        if (input == null || input.trim().isEmpty()) {
+            return errorResponse(input, "Missing \"input\"");
+        }
+        try {
+            CalculatorEngine.Mode mode = modeName == null ? CalculatorEngine.detectMode(input) : parseMode(modeName);
+            CalculationResult result = engine.calculate(mode, input);
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("input", input);
+            response.put("mode", mode.name().toLowerCase(Locale.ROOT));
+            response.put("result", result.toString());
+            response.put("values", result.getValues());
+            return response;
+        } catch (RuntimeException e) {
+            return errorResponse(input, e.getMessage());
+        } catch (StackOverflowError e) {
+            return errorResponse(input, "Expression too deeply nested");
+        }
+    }
+
+    private static CalculatorEngine.Mode parseMode(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "basic": return CalculatorEngine.Mode.BASIC;
+            case "scientific": return CalculatorEngine.Mode.SCIENTIFIC;
+            case "financial": return CalculatorEngine.Mode.FINANCIAL;
+            case "unit": case "unit_conversion": return CalculatorEngine.Mode.UNIT_CONVERSION;
+            case "statistics": return CalculatorEngine.Mode.STATISTICS;
+            default: throw new RuntimeException("Unknown mode: " + name);
+        }
+    }
+
+    private static Map<String, Object> errorResponse(String input, String message) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("input", input);
+        response.put("error", message);
+        return response;
+    }
+
+    private static String error(String message) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("error", message);
+        return Json.write(response);
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY + 1);
+            if (body.length > MAX_BODY) {
+                throw new IllegalArgumentException("Request body larger than " + MAX_BODY + " bytes");
+            }
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        if (query == null) return parameters;
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                           URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
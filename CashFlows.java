@@ -0,0 +1,262 @@
+import java.time.LocalDate;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+
+// Present value and internal rate of return of a series of cash flows.
+//
+// npv treats flows[t] as paid at the end of period t, with flows[0] today,
+// and evaluates the polynomial in x = 1 / (1 + rate) by Horner's scheme: n
+// multiply-adds and one division, no powers. The same loop gives the
+// derivative, which irr uses for Newton steps.
+//
+// irr and xirr first bracket a root by scanning a fixed grid of rates,
+// preferring the sign change nearest 10%, then refine it with Newton's
+// method safeguarded by bisection: any step that would leave the bracket,
+// or that does not shrink fast enough, is replaced by a bisection. This
+// always converges once a bracket is found. If the grid finds no sign
+// change, a wider grid that closes in on -100% and climbs far past 1000%
+// geometrically is tried. Flows that are all payments or all receipts have
+// no rate, and neither do flows whose value never changes sign; both throw.
+//
+// xirr takes dated flows and discounts each by (1 + rate)^(days / 365), as
+// spreadsheets do. The batch irr solves many instruments at once on a
+// ForkJoinPool, with NaN for those that have no rate.
+public final class CashFlows {
+    private static final double TOLERANCE = 1e-12;
+    private static final int MAX_ITERATIONS = 200;
+    private static final double GUESS = 0.1;
+    private static final double[] GRID = {
+        -0.99, -0.9, -0.75, -0.5, -0.25, -0.1, 0, 0.05, 0.1, 0.15, 0.25, 0.5, 1, 2, 5, 10, 100, 1000
+    };
+    // Tried when GRID finds no sign change: -100% plus 10^-15 ... 10^-3,
+    // then GRID, then 10^4 ... 10^15
+    private static final double[] WIDE_GRID = wideGrid();
+    private static final int CHUNK_SIZE = 256;
+    private static final String NOT_FOUND = "No internal rate of return found between -100% and 10^17%";
+
+    private static final CashFlows COMMON = new CashFlows(ForkJoinPool.commonPool());
+
+    private final ForkJoinPool pool;
+
+    public CashFlows(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public static CashFlows common() {
+        return COMMON;
+    }
+
+    public static double npv(double rate, double[] flows) {
+        double x = 1 / (1 + rate);
+        double value = 0;
+        for (int t = flows.length - 1; t >= 0; t--) {
+            value = value * x + flows[t];
+        }
+        return value;
+    }
+
+    // The rate at which npv is zero
+    public static double irr(double[] flows) {
+        checkSigns(flows);
+        double rate = solve(new Periodic(flows));
+        if (Double.isNaN(rate)) throw new RuntimeException(NOT_FOUND);
+        return rate;
+    }
+
+    // Flows on the given days (any origin, such as LocalDate.toEpochDay)
+    public static double xnpv(double rate, double[] amounts, double[] days) {
+        checkDated(amounts, days);
+        double logGrowth = Math.log1p(rate);
+        double value = 0;
+        for (int i = 0; i < amounts.length; i++) {
+            value += amounts[i] * Math.exp(-(days[i] - days[0]) / 365 * logGrowth);
+        }
+        return value;
+    }
+
+    public static double xirr(double[] amounts, double[] days) {
+        checkDated(amounts, days);
+        checkSigns(amounts);
+        double rate = solve(new Dated(amounts, days));
+        if (Double.isNaN(rate)) throw new RuntimeException(NOT_FOUND);
+        return rate;
+    }
+
+    public static double xirr(double[] amounts, LocalDate[] dates) {
+        double[] days = new double[dates.length];
+        for (int i = 0; i < dates.length; i++) days[i] = dates[i].toEpochDay();
+        return xirr(amounts, days);
+    }
+
+    // The IRR of every instrument, or NaN where there is none
+    public double[] irr(double[][] instruments) {
+        double[] rates = new double[instruments.length];
+        int chunks = (instruments.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntConsumer body = chunk -> {
+            int end = Math.min(instruments.length, (chunk + 1) * CHUNK_SIZE);
+            for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+                rates[i] = hasBothSigns(instruments[i]) ? solve(new Periodic(instruments[i])) : Double.NaN;
+            }
+        };
+        if (chunks > 0) ChunkedTasks.forEachChunk(pool, chunks, body);
+        return rates;
+    }
+
+    private static void checkSigns(double[] flows) {
+        if (!hasBothSigns(flows)) {
+            throw new RuntimeException("No internal rate of return: the cash flows need both payments and receipts");
+        }
+    }
+
+    private static boolean hasBothSigns(double[] flows) {
+        boolean payments = false;
+        boolean receipts = false;
+        for (double flow : flows) {
+            if (flow < 0) payments = true;
+            if (flow > 0) receipts = true;
+        }
+        return payments && receipts;
+    }
+
+    private static double[] wideGrid() {
+        double[] grid = new double[13 + GRID.length + 12];
+        int n = 0;
+        for (int k = 15; k >= 3; k--) grid[n++] = -1 + Math.pow(10, -k);
+        for (double rate : GRID) grid[n++] = rate;
+        for (int k = 4; k <= 15; k++) grid[n++] = Math.pow(10, k);
+        return grid;
+    }
+
+    private static void checkDated(double[] amounts, double[] days) {
+        if (amounts.length != days.length) {
+            throw new IllegalArgumentException("Every cash flow needs a date");
+        }
+        if (amounts.length == 0) {
+            throw new RuntimeException("No cash flows");
+        }
+    }
+
+    // The value of a discounted sum at a rate, with its derivative in slope[0]
+    private interface RateFunction {
+        double evaluate(double rate, double[] slope);
+    }
+
+    private static final class Periodic implements RateFunction {
+        private final double[] flows;
+
+        Periodic(double[] flows) {
+            this.flows = flows;
+        }
+
+        @Override
+        public double evaluate(double rate, double[] slope) {
+            double x = 1 / (1 + rate);
+            double value = 0;
+            double derivative = 0;
+            for (int t = flows.length - 1; t >= 0; t--) {
+                derivative = derivative * x + value;
+                value = value * x + flows[t];
+            }
+            // d/drate = d/dx * dx/drate, and dx/drate = -x^2
+            slope[0] = -derivative * x * x;
+            return value;
+        }
+    }
+
+    private static final class Dated implements RateFunction {
+        private final double[] amounts;
+        private final double[] years;
+
+        Dated(double[] amounts, double[] days) {
+            this.amounts = amounts;
+            this.years = new double[days.length];
+            for (int i = 0; i < days.length; i++) years[i] = (days[i] - days[0]) / 365;
+        }
+
+        @Override
+        public double evaluate(double rate, double[] slope) {
+            double logGrowth = Math.log1p(rate);
+            double value = 0;
+            double derivative = 0;
+            for (int i = 0; i < amounts.length; i++) {
+                double discounted = amounts[i] * Math.exp(-years[i] * logGrowth);
+                value += discounted;
+                derivative -= years[i] * discounted;
+            }
+            slope[0] = derivative / (1 + rate);
+            return value;
+        }
+    }
+
+    // A root of f, or NaN if neither grid finds a sign change
+    private static double solve(RateFunction f) {
+        double[] slope = new double[1];
+        double[] bracket = new double[2];
+        if (!bracket(f, GRID, bracket, slope) && !bracket(f, WIDE_GRID, bracket, slope)) {
+            return Double.NaN;
+        }
+        double lo = bracket[0];
+        double hi = bracket[1];
+        if (lo == hi) return lo;
+
+        // Orient the bracket so that f(lo) < 0 < f(hi)
+        if (f.evaluate(lo, slope) > 0) {
+            double t = lo;
+            lo = hi;
+            hi = t;
+        }
+        double rate = Math.min(Math.max(GUESS, Math.min(lo, hi)), Math.max(lo, hi));
+        double step = Math.abs(hi - lo);
+        double previousStep = step;
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            double value = f.evaluate(rate, slope);
+            if (value == 0) return rate;
+            if (value < 0) lo = rate;
+            else hi = rate;
+
+            double newton = rate - value / slope[0];
+            boolean outside = !((newton - lo) * (newton - hi) < 0);
+            if (outside || Math.abs(2 * value) > Math.abs(previousStep * slope[0])) {
+                previousStep = step;
+                step = (hi - lo) / 2;
+                rate = lo + step;
+            } else {
+                previousStep = step;
+                step = newton - rate;
+                rate = newton;
+            }
+            // Relative to 1 + rate below 0%, where the growth factor is what
+            // needs its digits
+            if (Math.abs(step) <= TOLERANCE * Math.min(Math.max(1, Math.abs(rate)), 1 + rate)) return rate;
+        }
+        return rate;
+    }
+
+    // The sign change on the grid nearest GUESS into bracket, or an exact
+    // root as both ends; false if there is none
+    private static boolean bracket(RateFunction f, double[] grid, double[] bracket, double[] slope) {
+        boolean found = false;
+        double previousRate = Double.NaN, previousValue = Double.NaN;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (double rate : grid) {
+            double value = f.evaluate(rate, slope);
+            if (value == 0) {
+                bracket[0] = rate;
+                bracket[1] = rate;
+                return true;
+            }
+            if (Double.isFinite(value) && Double.isFinite(previousValue) && (value < 0) != (previousValue < 0)) {
+                double distance = Math.max(0, Math.max(previousRate - GUESS, GUESS - rate));
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    bracket[0] = previousRate;
+                    bracket[1] = rate;
+                    found = true;
+                }
+            }
+            previousRate = rate;
+            previousValue = value;
+        }
+        return found;
+    }
+}
@@ -0,0 +1,50 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+// Fork/join over a range of chunk indexes, shared by the classes that cut
+// their work into fixed-size chunks (ParallelStatistics, PortfolioPricer,
+// MonteCarloProjection, CashFlows). What a chunk covers is up to the
+// caller; the chunks themselves are independent.
+final class ChunkedTasks {
+
+    private ChunkedTasks() {
+    }
+
+    // Runs body once for every chunk index from 0 to chunks - 1 on the pool.
+    // A single chunk runs on the calling thread.
+    static void forEachChunk(ForkJoinPool pool, int chunks, IntConsumer body) {
+        if (chunks < 1) throw new IllegalArgumentException("Chunk count must be positive: " + chunks);
+        if (chunks == 1) {
+            body.accept(0);
+        } else {
+            pool.invoke(new ChunkAction(0, chunks, body));
+        }
+    }
+
+    // Splits a range of chunks in halves until single chunks remain.
+    // ForkJoinTask is Serializable, but these tasks are never serialized.
+    private static final class ChunkAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final transient IntConsumer body;
+
+        ChunkAction(int from, int to, IntConsumer body) {
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                body.accept(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ChunkAction(from, middle, body), new ChunkAction(middle, to, body));
+        }
+    }
+}
@@ -0,0 +1,201 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// A parsed expression that can be evaluated repeatedly without re-parsing.
+// Instances are immutable and safe to share between threads.
+//
+// Named variables are numbered in order of first appearance in the source;
+// getVariableNames() gives that order, which is the order evaluate(double...)
+// expects its values in.
+//
+// Single-row evaluation starts out interpreting the tree. Once an expression
+// has been evaluated COMPILE_THRESHOLD times it is handed to
+// ExpressionCompiler and later calls run the generated bytecode instead. Set
+// -Dcalculator.compileThreshold=-1 to stay on the interpreter.
+//
+// The same expression can also be evaluated in BigDecimal arithmetic to any
+// precision (see DecimalEvaluator). That works on the tree as parsed, before
+// optimization, and does not touch the double path.
+final class CompiledExpression {
+    // Rows evaluated per pass in bulk mode; keeps the scratch buffers in cache
+    static final int BLOCK_SIZE = 1024;
+
+    static final int COMPILE_THRESHOLD = Integer.getInteger("calculator.compileThreshold", 10_000);
+
+    private static final double[] NO_VARIABLES = new double[0];
+
+    private final String source;
+    private final ExpressionNode root;
+    private final ExpressionNode parsed;
+    private final String[] variables;
+    private final int scratchDepth;
+
+    // Racy on purpose: the count only decides when to compile, and a kernel
+    // is immutable so any thread may publish one
+    private int invocations;
+    private volatile ExpressionCompiler.Kernel kernel;
+
+    CompiledExpression(String source, ExpressionNode root, ExpressionNode parsed, String[] variables) {
+        this.source = source;
+        this.root = root;
+        this.parsed = parsed;
+        this.variables = variables;
+        this.scratchDepth = root.scratchDepth();
+    }
+
+    public double evaluate() {
+        if (variables.length > 0) {
+            throw new RuntimeException("Missing value for variable: " + variables[0]);
+        }
+        return run(NO_VARIABLES);
+    }
+
+    public double evaluate(double... values) {
+        if (values.length != variables.length) {
+            throw new RuntimeException("Expected " + variables.length + " variable values but got " + values.length);
+        }
+        return run(values);
+    }
+
+    public double evaluate(Map<String, Double> values) {
+        double[] row = new double[variables.length];
+        for (int i = 0; i < variables.length; i++) {
+            Double value = values.get(variables[i]);
+            if (value == null) {
+                throw new RuntimeException("Missing value for variable: " + variables[i]);
+            }
+            row[i] = value;
+        }
+        return run(row);
+    }
+
+    // Precision mode: the value rounded to context's digits; literals are
+    // read exactly from the source text
+    public BigDecimal evaluate(MathContext context, BigDecimal... values) {
+        if (values.length != variables.length) {
+            throw new RuntimeException("Expected " + variables.length + " variable values but got " + values.length);
+        }
+        return DecimalEvaluator.evaluate(parsed, values, context);
+    }
+
+    public BigDecimal evaluate(MathContext context, Map<String, BigDecimal> values) {
+        BigDecimal[] row = new BigDecimal[variables.length];
+        for (int i = 0; i < variables.length; i++) {
+            row[i] = values.get(variables[i]);
+            if (row[i] == null) {
+                throw new RuntimeException("Missing value for variable: " + variables[i]);
+            }
+        }
+        return DecimalEvaluator.evaluate(parsed, row, context);
+    }
+
+    private double run(double[] values) {
+        ExpressionCompiler.Kernel compiled = kernel;
+        if (compiled != null) {
+            return compiled.evaluate(values);
+        }
+        if (COMPILE_THRESHOLD >= 0 && ++invocations >= COMPILE_THRESHOLD) {
+            return compileKernel().evaluate(values);
+        }
+        return root.evaluate(values);
+    }
+
+    private synchronized ExpressionCompiler.Kernel compileKernel() {
+        if (kernel == null) {
+            ExpressionCompiler.Kernel compiled = ExpressionCompiler.compile(root);
+            // Null when the tree cannot be compiled: keep interpreting
+            kernel = compiled != null ? compiled : new Interpreted(root);
+        }
+        return kernel;
+    }
+
+    // True once evaluation has switched from the tree to generated bytecode
+    public boolean isCompiled() {
+        ExpressionCompiler.Kernel compiled = kernel;
+        return compiled != null && !(compiled instanceof Interpreted);
+    }
+
+    private static final class Interpreted implements ExpressionCompiler.Kernel {
+        private final ExpressionNode root;
+
+        Interpreted(ExpressionNode root) {
+            this.root = root;
+        }
+
+        public double evaluate(double[] variables) {
+            return root.evaluate(variables);
+        }
+    }
+
+    // Evaluates the expression once per row of the given columns. Every
+    // variable needs a column and all columns must have the same length.
+    public double[] evaluateColumns(Map<String, double[]> columns) {
+        double[][] bound = bindColumns(columns);
+        int rows;
+        if (bound.length > 0) {
+            rows = bound[0].length;
+        } else {
+            // No variables: one row per row of whatever columns were passed
+            rows = columns.isEmpty() ? 1 : columns.values().iterator().next().length;
+        }
+        double[] out = new double[rows];
+        evaluateColumns(bound, out);
+        return out;
+    }
+
+    // Same as evaluateColumns(Map) but with the columns already in
+    // getVariableNames() order, writing into a caller-supplied array.
+    public void evaluateColumns(double[][] columns, double[] out) {
+        if (columns.length != variables.length) {
+            throw new RuntimeException("Expected " + variables.length + " columns but got " + columns.length);
+        }
+        int rows = out.length;
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].length != rows) {
+                throw new RuntimeException("Column '" + variables[i] + "' has " + columns[i].length
+                                           + " rows, expected " + rows);
+            }
+        }
+
+        int blockSize = Math.min(BLOCK_SIZE, Math.max(rows, 1));
+        double[] block = new double[blockSize];
+        double[][] scratch = new double[scratchDepth][blockSize];
+        for (int offset = 0; offset < rows; offset += blockSize) {
+            int length = Math.min(blockSize, rows - offset);
+            root.evaluate(columns, offset, length, block, scratch, 0);
+            System.arraycopy(block, 0, out, offset, length);
+        }
+    }
+
+    private double[][] bindColumns(Map<String, double[]> columns) {
+        double[][] bound = new double[variables.length][];
+        for (int i = 0; i < variables.length; i++) {
+            bound[i] = columns.get(variables[i]);
+            if (bound[i] == null) {
+                throw new RuntimeException("Missing column for variable: " + variables[i]);
+            }
+        }
+        return bound;
+    }
+
+    public List<String> getVariableNames() {
+        return Collections.unmodifiableList(Arrays.asList(variables));
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    ExpressionNode getRoot() {
+        return root;
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+}
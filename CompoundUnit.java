@@ -0,0 +1,129 @@
+import java.util.Arrays;
+
+// A unit built from registry units with '/', '*' and powers, such as
+// "km/h", "kg/m3", "gal/min", "m/s^2" or "N*m" once defined. It is reduced
+// to a dimension (exponents of mass, length, time and temperature) and one
+// factor to the matching SI unit. Two compound units convert if their
+// dimensions agree, by the ratio of their factors.
+//
+// Parsing happens once per distinct text; UnitRegistry.compound caches the
+// result.
+final class CompoundUnit {
+    // Order of the exponents in a dimension
+    static final String BASE_DIMENSIONS = "MLTK";
+
+    private final String text;
+    private final double factor;
+    private final int[] dimension;
+
+    CompoundUnit(String text, double factor, int[] dimension) {
+        this.text = text;
+        this.factor = factor;
+        this.dimension = dimension;
+    }
+
+    // "kg/m3" -> kg * m^-3; each '/' divides by the single term after it
+    static CompoundUnit parse(String text, UnitRegistry units) {
+        String unit = text.trim();
+        if (unit.isEmpty()) throw new RuntimeException("Missing unit");
+        double factor = 1;
+        int[] dimension = new int[BASE_DIMENSIONS.length()];
+        int start = 0;
+        int sign = 1;
+        for (int i = 0; i <= unit.length(); i++) {
+            char c = i < unit.length() ? unit.charAt(i) : '*';
+            if (c != '/' && c != '*' && c != '·') continue;
+            String term = unit.substring(start, i).trim();
+            if (term.isEmpty()) throw new RuntimeException("Invalid unit: " + text);
+            factor = applyTerm(term, sign, factor, dimension, units);
+            sign = c == '/' ? -1 : 1;
+            start = i + 1;
+        }
+        return new CompoundUnit(unit, factor, dimension);
+    }
+
+    // Folds "m3", "s^2", "ft" or "cubic meter" into the running factor
+    private static double applyTerm(String term, int sign, double factor, int[] dimension, UnitRegistry units) {
+        int id = units.find(term);
+        int power = 1;
+        if (id < 0) {
+            // A trailing power: "s2", "s^2", "m^-1"
+            int end = term.length();
+            while (end > 0 && Character.isDigit(term.charAt(end - 1))) end--;
+            int digits = end;
+            if (end > 0 && term.charAt(end - 1) == '-') end--;
+            if (end > 0 && term.charAt(end - 1) == '^') end--;
+            if (digits < term.length() && end > 0) {
+                power = Integer.parseInt(term.substring(digits));
+                if (term.charAt(digits - 1) == '-') power = -power;
+                id = units.find(term.substring(0, end).trim());
+            }
+        }
+        if (id < 0) throw new RuntimeException("Unknown unit: " + term);
+        if (units.siOffset(id) != 0) {
+            throw new RuntimeException(units.name(id) + " has an offset and cannot be part of a compound unit");
+        }
+        int[] unitDimension = units.dimension(id);
+        for (int d = 0; d < dimension.length; d++) {
+            dimension[d] += sign * power * unitDimension[d];
+        }
+        return factor * Math.pow(units.siFactor(id), sign * power);
+    }
+
+    String getText() {
+        return text;
+    }
+
+    // Multiplier from this unit to the SI unit of the same dimension
+    double getFactor() {
+        return factor;
+    }
+
+    boolean isCompatible(CompoundUnit other) {
+        return Arrays.equals(dimension, other.dimension);
+    }
+
+    // Multiplier from this unit to other
+    double scaleTo(CompoundUnit other) {
+        if (!isCompatible(other)) {
+            throw new RuntimeException("Cannot convert " + text + " (" + describe(dimension) + ") to "
+                                       + other.text + " (" + describe(other.dimension) + ")");
+        }
+        return factor / other.factor;
+    }
+
+    double convert(double value, CompoundUnit to) {
+        return value * scaleTo(to);
+    }
+
+    // {0, 1, -1, 0} -> "L*T^-1"
+    static String describe(int[] dimension) {
+        StringBuilder text = new StringBuilder();
+        for (int d = 0; d < dimension.length; d++) {
+            if (dimension[d] == 0) continue;
+            if (text.length() > 0) text.append('*');
+            text.append(BASE_DIMENSIONS.charAt(d));
+            if (dimension[d] != 1) text.append('^').append(dimension[d]);
+        }
+        return text.length() > 0 ? text.toString() : "dimensionless";
+    }
+
+    // "L3" -> {0, 3, 0, 0}; "M" -> {1, 0, 0, 0}
+    static int[] parseDimension(String text) {
+        int[] dimension = new int[BASE_DIMENSIONS.length()];
+        int i = 0;
+        while (i < text.length()) {
+            int base = BASE_DIMENSIONS.indexOf(Character.toUpperCase(text.charAt(i++)));
+            if (base < 0) throw new IllegalArgumentException("Unknown dimension in " + text);
+            int start = i;
+            while (i < text.length() && (Character.isDigit(text.charAt(i)) || text.charAt(i) == '-')) i++;
+            dimension[base] += start == i ? 1 : Integer.parseInt(text.substring(start, i));
+        }
+        return dimension;
+    }
+
+    @Override
+    public String toString() {
+        return text + " [" + describe(dimension) + "]";
+    }
+}
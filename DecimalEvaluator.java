@@ -0,0 +1,370 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+// Precision mode: evaluates a parsed expression tree in BigDecimal
+// arithmetic to a chosen number of significant digits. It walks the same
+// nodes the double interpreter does, but the unoptimized tree, because
+// optimization folds constants in double arithmetic. Literals are read
+// exactly from their source text, so 0.1 is one tenth and not the nearest
+// double.
+//
+// Every step works with GUARD_DIGITS extra digits and the result is rounded
+// to the requested precision once, at the end. Rounding the working result
+// rounds twice, which goes wrong when it lies almost exactly halfway between
+// two answers: 1.25 + 10^-15 to two digits is 1.3, but 1.25000000000 rounds
+// to 1.2. When the working result is that close to a half, the expression
+// is evaluated again with twice the guard digits, until the result moves
+// away from the half or stops changing (an exact tie). The functions of
+// MathFunctions are computed with series and Newton iteration at that
+// working precision; like the double versions, trigonometry is in degrees.
+// Where the double version returns NaN or infinity, this throws.
+final class DecimalEvaluator {
+    private static final int GUARD_DIGITS = 10;
+    private static final int MAX_GUARD_DIGITS = 160;
+    // Working results within this many digits of the last working digit
+    // from a half are re-evaluated
+    private static final int HALF_MARGIN_DIGITS = 3;
+    private static final int MAX_FACTORIAL = 10_000;
+    private static final BigDecimal TWO = BigDecimal.valueOf(2);
+    private static final BigDecimal DEGREES_180 = BigDecimal.valueOf(180);
+    private static final BigDecimal DEGREES_360 = BigDecimal.valueOf(360);
+
+    // Pi to the most digits asked for so far; shorter requests round it
+    private static volatile BigDecimal pi = BigDecimal.ZERO;
+
+    private DecimalEvaluator() {
+    }
+
+    static BigDecimal evaluate(ExpressionNode root, BigDecimal[] variables, MathContext context) {
+        if (context.getPrecision() <= 0) {
+            throw new RuntimeException("Precision mode needs a number of digits");
+        }
+        BigDecimal previous = null;
+        try {
+            for (int guard = GUARD_DIGITS; ; guard *= 2) {
+                MathContext working = new MathContext(context.getPrecision() + guard, RoundingMode.HALF_EVEN);
+                BigDecimal result = value(root, variables, working);
+                if (guard >= MAX_GUARD_DIGITS || !nearHalf(result, context, working)
+                    || (previous != null && result.compareTo(previous) == 0)) {
+                    return result.round(context);
+                }
+                previous = result;
+            }
+        } catch (ArithmeticException e) {
+            throw new RuntimeException(e.getMessage());
+        }
+    }
+
+    // Whether value, computed at the working precision, is so close to
+    // halfway between two numbers of the requested precision that the error
+    // in its last digits could decide which way it rounds
+    private static boolean nearHalf(BigDecimal value, MathContext context, MathContext working) {
+        if (value.signum() == 0) return false;
+        BigDecimal rounded = value.round(context);
+        BigDecimal half = rounded.ulp().divide(TWO);
+        BigDecimal distance = value.subtract(rounded).abs().subtract(half).abs();
+        // The last working digit of value, shifted up by the margin
+        int exponent = value.precision() - value.scale() - working.getPrecision() + HALF_MARGIN_DIGITS;
+        return distance.compareTo(BigDecimal.ONE.scaleByPowerOfTen(exponent)) <= 0;
+    }
+
+    private static BigDecimal value(ExpressionNode node, BigDecimal[] variables, MathContext mc) {
+        if (node instanceof ExpressionNode.Constant) {
+            return constant((ExpressionNode.Constant) node, mc);
+        }
+        if (node instanceof ExpressionNode.Variable) {
+            return variables[((ExpressionNode.Variable) node).index];
+        }
+        if (node instanceof ExpressionNode.Negate) {
+            return value(((ExpressionNode.Negate) node).operand, variables, mc).negate();
+        }
+        if (node instanceof ExpressionNode.Square) {
+            BigDecimal value = value(((ExpressionNode.Square) node).operand, variables, mc);
+            return value.multiply(value, mc);
+        }
+        if (node instanceof ExpressionNode.UnaryCall) {
+            ExpressionNode.UnaryCall call = (ExpressionNode.UnaryCall) node;
+            return unary(call.function.name, value(call.operand, variables, mc), mc);
+        }
+        ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+        BigDecimal left = value(binary.left, variables, mc);
+        BigDecimal right = value(binary.right, variables, mc);
+        if (node instanceof ExpressionNode.Add) return left.add(right, mc);
+        if (node instanceof ExpressionNode.Subtract) return left.subtract(right, mc);
+        if (node instanceof ExpressionNode.Multiply) return left.multiply(right, mc);
+        if (node instanceof ExpressionNode.Divide) return divide(left, right, mc);
+        if (node instanceof ExpressionNode.Power) return pow(left, right, mc);
+        return binary(((ExpressionNode.BinaryCall) node).function.name, left, right, mc);
+    }
+
+    private static BigDecimal constant(ExpressionNode.Constant constant, MathContext mc) {
+        String text = constant.text;
+        if (text == null) return new BigDecimal(constant.value);
+        switch (text) {
+            case "pi": case "π":
+                return pi(mc);
+            case "e":
+                return exp(BigDecimal.ONE, mc);
+            default:
+                return new BigDecimal(text);
+        }
+    }
+
+    private static BigDecimal unary(String name, BigDecimal x, MathContext mc) {
+        switch (name) {
+            case "sin":
+                return sin(x, mc);
+            case "cos":
+                return sin(x.add(BigDecimal.valueOf(90)), mc);
+            case "tan": {
+                BigDecimal cos = sin(x.add(BigDecimal.valueOf(90)), mc);
+                if (cos.signum() == 0) throw new ArithmeticException("tan(" + x + ") is undefined");
+                return sin(x, mc).divide(cos, mc);
+            }
+            case "asin":
+                return toDegrees(asin(x, mc), mc);
+            case "acos":
+                return toDegrees(acos(x, mc), mc);
+            case "atan":
+                return toDegrees(atan(x, mc), mc);
+            case "sqrt":
+                if (x.signum() < 0) throw new ArithmeticException("Square root of a negative number");
+                return x.sqrt(mc);
+            case "cbrt":
+                if (x.signum() == 0) return BigDecimal.ZERO;
+                BigDecimal root = exp(ln(x.abs(), mc).divide(BigDecimal.valueOf(3), mc), mc);
+                return x.signum() < 0 ? root.negate() : root;
+            case "log":
+                return ln(x, mc).divide(ln(BigDecimal.TEN, mc), mc);
+            case "ln":
+                return ln(x, mc);
+            case "exp":
+                return exp(x, mc);
+            case "abs":
+                return x.abs();
+            case "floor":
+                return x.setScale(0, RoundingMode.FLOOR);
+            case "ceil":
+                return x.setScale(0, RoundingMode.CEILING);
+            case "round":
+                // Math.rint rounds halves to even
+                return x.setScale(0, RoundingMode.HALF_EVEN);
+            case "rad":
+                return x.multiply(pi(mc), mc).divide(DEGREES_180, mc);
+            case "deg":
+                return toDegrees(x, mc);
+            case "factorial":
+                return factorial(x, mc);
+            default:
+                throw new RuntimeException("Function " + name + " is not available in precision mode");
+        }
+    }
+
+    private static BigDecimal binary(String name, BigDecimal a, BigDecimal b, MathContext mc) {
+        switch (name) {
+            case "min":
+                return a.compareTo(b) <= 0 ? a : b;
+            case "max":
+                return a.compareTo(b) >= 0 ? a : b;
+            case "pow":
+                return pow(a, b, mc);
+            case "hypot":
+                return a.multiply(a, mc).add(b.multiply(b, mc), mc).sqrt(mc);
+            default:
+                throw new RuntimeException("Function " + name + " is not available in precision mode");
+        }
+    }
+
+    private static BigDecimal divide(BigDecimal a, BigDecimal b, MathContext mc) {
+        if (b.signum() == 0) throw new ArithmeticException("Division by zero");
+        return a.divide(b, mc);
+    }
+
+    private static BigDecimal pow(BigDecimal base, BigDecimal exponent, MathContext mc) {
+        if (isInteger(exponent) && exponent.abs().compareTo(BigDecimal.valueOf(999_999_999)) <= 0) {
+            int n = exponent.intValueExact();
+            if (base.signum() == 0 && n < 0) throw new ArithmeticException("Division by zero");
+            return base.pow(n, mc);
+        }
+        if (base.signum() == 0) {
+            if (exponent.signum() > 0) return BigDecimal.ZERO;
+            throw new ArithmeticException("Division by zero");
+        }
+        if (base.signum() < 0) {
+            throw new ArithmeticException("A negative number to a fractional power is not a real number");
+        }
+        return exp(exponent.multiply(ln(base, mc), mc), mc);
+    }
+
+    private static boolean isInteger(BigDecimal x) {
+        return x.signum() == 0 || x.stripTrailingZeros().scale() <= 0;
+    }
+
+    private static BigDecimal factorial(BigDecimal x, MathContext mc) {
+        if (x.signum() < 0 || !isInteger(x)) {
+            throw new ArithmeticException("Factorial is only defined for non-negative whole numbers");
+        }
+        if (x.compareTo(BigDecimal.valueOf(MAX_FACTORIAL)) > 0) {
+            throw new ArithmeticException("Factorial argument too large: " + x);
+        }
+        BigInteger product = BigInteger.ONE;
+        for (int i = x.intValueExact(); i > 1; i--) {
+            product = product.multiply(BigInteger.valueOf(i));
+        }
+        return new BigDecimal(product, mc);
+    }
+
+    // e^x: halve x until it is tiny, sum the Taylor series, then square back
+    static BigDecimal exp(BigDecimal x, MathContext mc) {
+        if (x.signum() == 0) return BigDecimal.ONE;
+        // Each squaring can double the relative error, so carry extra digits
+        int halvings = Math.max(0, x.precision() - x.scale() + 4) * 4;
+        MathContext inner = new MathContext(mc.getPrecision() + halvings / 3 + 2, RoundingMode.HALF_EVEN);
+        BigDecimal reduced = x.divide(TWO.pow(halvings), inner);
+        BigDecimal sum = BigDecimal.ONE;
+        BigDecimal term = BigDecimal.ONE;
+        BigDecimal epsilon = BigDecimal.ONE.movePointLeft(inner.getPrecision() + 1);
+        for (int n = 1; term.abs().compareTo(epsilon) > 0; n++) {
+            term = term.multiply(reduced, inner).divide(BigDecimal.valueOf(n), inner);
+            sum = sum.add(term, inner);
+        }
+        for (int i = 0; i < halvings; i++) sum = sum.multiply(sum, inner);
+        return sum.round(mc);
+    }
+
+    // Natural logarithm by Newton's method on exp, from the double estimate:
+    // y += 2 (x - e^y) / (x + e^y), which triples the correct digits each step
+    static BigDecimal ln(BigDecimal x, MathContext mc) {
+        if (x.signum() <= 0) throw new ArithmeticException("Logarithm of a non-positive number");
+        if (x.compareTo(BigDecimal.ONE) == 0) return BigDecimal.ZERO;
+        // x = m * 10^k with m in [1, 10), so the double estimate cannot
+        // overflow. Between 0.1 and 10 x is used as it is: for x just below 1,
+        // ln(9.99...) - ln(10) would cancel most of the digits.
+        int k = x.precision() - x.scale() - 1;
+        if (k == -1) k = 0;
+        // Near 1, e^y is 1 plus a small part, so each digit of ln(x) below the
+        // leading zeros of x - 1 needs a working digit of its own
+        BigDecimal distance = x.subtract(BigDecimal.ONE);
+        int leadingZeros = k == 0 ? Math.max(0, distance.scale() - distance.precision()) : 0;
+        MathContext inner = new MathContext(mc.getPrecision() + 5 + leadingZeros, RoundingMode.HALF_EVEN);
+        BigDecimal y = refineLn(x.movePointLeft(k), inner);
+        if (k != 0) {
+            y = y.add(BigDecimal.valueOf(k).multiply(refineLn(BigDecimal.TEN, inner), inner), inner);
+        }
+        return y.round(mc);
+    }
+
+    private static BigDecimal refineLn(BigDecimal m, MathContext mc) {
+        BigDecimal y = new BigDecimal(Math.log(m.doubleValue()));
+        for (int digits = 15; ; digits *= 3) {
+            BigDecimal e = exp(y, mc);
+            y = y.add(TWO.multiply(m.subtract(e, mc), mc).divide(m.add(e, mc), mc), mc);
+            if (digits * 3 >= mc.getPrecision()) return y;
+        }
+    }
+
+    // Sine of an angle in degrees. The angle is reduced modulo 360 exactly,
+    // and multiples of 30 degrees with rational sines come out exact, so
+    // sin(180) is 0 rather than a tiny remainder.
+    private static BigDecimal sin(BigDecimal degrees, MathContext mc) {
+        BigDecimal angle = degrees.remainder(DEGREES_360);
+        if (angle.signum() < 0) angle = angle.add(DEGREES_360);
+        if (isInteger(angle) && angle.remainder(BigDecimal.valueOf(30)).signum() == 0) {
+            switch (angle.intValueExact()) {
+                case 0: case 180: return BigDecimal.ZERO;
+                case 30: case 150: return new BigDecimal("0.5");
+                case 90: return BigDecimal.ONE;
+                case 210: case 330: return new BigDecimal("-0.5");
+                case 270: return BigDecimal.ONE.negate();
+                default: break;
+            }
+        }
+        // Fold into [-90, 90], where the series converges quickly
+        if (angle.compareTo(BigDecimal.valueOf(270)) > 0) {
+            angle = angle.subtract(DEGREES_360);
+        } else if (angle.compareTo(BigDecimal.valueOf(90)) > 0) {
+            angle = DEGREES_180.subtract(angle);
+        }
+        MathContext inner = new MathContext(mc.getPrecision() + 3, RoundingMode.HALF_EVEN);
+        BigDecimal radians = angle.multiply(pi(inner), inner).divide(DEGREES_180, inner);
+        BigDecimal square = radians.multiply(radians, inner);
+        BigDecimal term = radians;
+        BigDecimal sum = radians;
+        // Relative to the first term, so small angles keep every digit
+        BigDecimal epsilon = radians.abs().movePointLeft(inner.getPrecision() + 1);
+        for (int n = 1; term.abs().compareTo(epsilon) > 0; n++) {
+            term = term.multiply(square, inner).divide(BigDecimal.valueOf((2L * n) * (2L * n + 1)), inner).negate();
+            sum = sum.add(term, inner);
+        }
+        return sum.round(mc);
+    }
+
+    // In radians. 1 - x^2 is formed as (1 - x)(1 + x) from exact sums, so
+    // nothing cancels when x is close to 1.
+    private static BigDecimal asin(BigDecimal x, MathContext mc) {
+        int side = x.abs().compareTo(BigDecimal.ONE);
+        if (side > 0) throw new ArithmeticException("asin is only defined between -1 and 1");
+        if (side == 0) return pi(mc).divide(TWO, mc).multiply(BigDecimal.valueOf(x.signum()));
+        BigDecimal cos = BigDecimal.ONE.subtract(x).multiply(BigDecimal.ONE.add(x), mc).sqrt(mc);
+        return atan(x.divide(cos, mc), mc);
+    }
+
+    // In radians, as 2 atan(sqrt((1 - x) / (1 + x))) rather than 90 degrees
+    // minus asin(x), which cancels for x close to 1
+    private static BigDecimal acos(BigDecimal x, MathContext mc) {
+        if (x.abs().compareTo(BigDecimal.ONE) > 0) {
+            throw new ArithmeticException("acos is only defined between -1 and 1");
+        }
+        if (x.compareTo(BigDecimal.ONE.negate()) == 0) return pi(mc);
+        BigDecimal ratio = BigDecimal.ONE.subtract(x).divide(BigDecimal.ONE.add(x), mc);
+        return TWO.multiply(atan(ratio.sqrt(mc), mc), mc);
+    }
+
+    // In radians. atan(x) = 2 atan(x / (1 + sqrt(1 + x^2))) shrinks the
+    // argument until the Taylor series converges fast.
+    private static BigDecimal atan(BigDecimal x, MathContext mc) {
+        if (x.signum() == 0) return BigDecimal.ZERO;
+        MathContext inner = new MathContext(mc.getPrecision() + 5, RoundingMode.HALF_EVEN);
+        int doublings = 0;
+        BigDecimal limit = new BigDecimal("0.1");
+        while (x.abs().compareTo(limit) > 0) {
+            BigDecimal hypotenuse = BigDecimal.ONE.add(x.multiply(x, inner), inner).sqrt(inner);
+            x = x.divide(BigDecimal.ONE.add(hypotenuse, inner), inner);
+            doublings++;
+        }
+        return atanSeries(x, inner).multiply(TWO.pow(doublings), inner).round(mc);
+    }
+
+    private static BigDecimal atanSeries(BigDecimal x, MathContext mc) {
+        BigDecimal square = x.multiply(x, mc);
+        BigDecimal power = x;
+        BigDecimal sum = x;
+        BigDecimal epsilon = x.abs().movePointLeft(mc.getPrecision() + 1);
+        for (int n = 1; ; n++) {
+            power = power.multiply(square, mc).negate();
+            BigDecimal term = power.divide(BigDecimal.valueOf(2L * n + 1), mc);
+            if (term.abs().compareTo(epsilon) <= 0) break;
+            sum = sum.add(term, mc);
+        }
+        return sum;
+    }
+
+    private static BigDecimal toDegrees(BigDecimal radians, MathContext mc) {
+        return radians.multiply(DEGREES_180, mc).divide(pi(mc), mc);
+    }
+
+    // Machin's formula: pi = 16 atan(1/5) - 4 atan(1/239)
+    static BigDecimal pi(MathContext mc) {
+        BigDecimal known = pi;
+        if (known.precision() >= mc.getPrecision()) return known.round(mc);
+        MathContext inner = new MathContext(mc.getPrecision() + 5, RoundingMode.HALF_EVEN);
+        BigDecimal fifth = atanSeries(new BigDecimal("0.2"), inner);
+        BigDecimal part = atanSeries(BigDecimal.ONE.divide(BigDecimal.valueOf(239), inner), inner);
+        BigDecimal value = BigDecimal.valueOf(16).multiply(fifth, inner)
+            .subtract(BigDecimal.valueOf(4).multiply(part, inner), inner);
+        pi = value;
+        return value.round(mc);
+    }
+}
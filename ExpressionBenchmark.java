@@ -0,0 +1,141 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+// Compares re-parsing an expression on every call with evaluating a
+// CompiledExpression that was parsed once, and per-row evaluation of a
+// formula with variables against bulk evaluation over double[] columns.
+// Usage: java ExpressionBenchmark [iterations] [rows]
+// Run with -Dcalculator.compileThreshold=-1 to time the tree interpreter
+// without the generated-bytecode backend.
+public class ExpressionBenchmark {
+
+    private static final String[] FORMULAS = {
+        "2 + 3 * 4",
+        "(1.5 + 2.25) * (7 - 3) / 2",
+        "2 ^ 10 - 3 * (4 + 5) / 6",
+        "((1 + 2) * (3 + 4) - (5 - 6) * (7 + 8)) / 9 ^ 0.5"
+    };
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        ExpressionEvaluator evaluator = new ExpressionEvaluator();
+
+        CompiledExpression[] compiled = new CompiledExpression[FORMULAS.length];
+        for (int i = 0; i < FORMULAS.length; i++) {
+            compiled[i] = evaluator.compile(FORMULAS[i]);
+        }
+
+        // Warm up both paths so the JIT has compiled them before timing
+        for (int round = 0; round < 3; round++) {
+            runParsed(evaluator, iterations / 10);
+            runCompiled(compiled, iterations / 10);
+        }
+
+        long start = System.nanoTime();
+        double parsedSum = runParsed(evaluator, iterations);
+        long parsedNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        double compiledSum = runCompiled(compiled, iterations);
+        long compiledNanos = System.nanoTime() - start;
+
+        long evaluations = (long) iterations * FORMULAS.length;
+        System.out.println("Evaluations per path: " + evaluations);
+        System.out.printf("Parse every time: %8.1f ns/op (checksum %.4f)%n",
+                          (double) parsedNanos / evaluations, parsedSum);
+        System.out.printf("Compiled once:    %8.1f ns/op (checksum %.4f)%n",
+                          (double) compiledNanos / evaluations, compiledSum);
+        System.out.printf("Speedup: %.1fx%n", (double) parsedNanos / compiledNanos);
+
+        int rows = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        benchmarkColumns(evaluator, rows);
+    }
+
+    private static void benchmarkColumns(ExpressionEvaluator evaluator, int rows) {
+        Random random = new Random(42);
+        double[] price = new double[rows];
+        double[] qty = new double[rows];
+        double[] tax = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            // Whole cents and percents, so the per-row text has no exponent notation
+            price[i] = random.nextInt(10_000) / 100.0;
+            qty[i] = 1 + random.nextInt(20);
+            tax[i] = random.nextInt(26) / 100.0;
+        }
+        Map<String, double[]> columns = new HashMap<>();
+        columns.put("price", price);
+        columns.put("qty", qty);
+        columns.put("tax", tax);
+
+        String formula = "price*qty*(1+tax)";
+        CompiledExpression compiled = evaluator.compile(formula);
+        double[] out = new double[rows];
+        double[][] bound = {price, qty, tax};
+
+        for (int round = 0; round < 5; round++) {
+            compiled.evaluateColumns(bound, out);
+            runRows(compiled, price, qty, tax, rows / 10);
+        }
+
+        long start = System.nanoTime();
+        int textRows = Math.min(rows, 100_000);
+        double textSum = 0;
+        for (int i = 0; i < textRows; i++) {
+            textSum += evaluator.evaluate(price[i] + "*" + qty[i] + "*(1+" + tax[i] + ")");
+        }
+        long textNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        double rowSum = runRows(compiled, price, qty, tax, rows);
+        long rowNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        compiled.evaluateColumns(bound, out);
+        long columnNanos = System.nanoTime() - start;
+        double columnSum = 0;
+        for (double value : out) columnSum += value;
+
+        System.out.println();
+        System.out.println("Formula " + formula + " over " + rows + " rows");
+        System.out.printf("String per row:   %8.1f ns/row (%d rows, checksum %.4f)%n",
+                          (double) textNanos / textRows, textRows, textSum);
+        System.out.printf("Compiled per row: %8.1f ns/row (checksum %.4f)%n",
+                          (double) rowNanos / rows, rowSum);
+        System.out.printf("Column bulk:      %8.1f ns/row (checksum %.4f)%n",
+                          (double) columnNanos / rows, columnSum);
+    }
+
+    private static double runRows(CompiledExpression compiled, double[] price, double[] qty,
+                                  double[] tax, int rows) {
+        double sum = 0;
+        double[] row = new double[3];
+        for (int i = 0; i < rows; i++) {
+            row[0] = price[i];
+            row[1] = qty[i];
+            row[2] = tax[i];
+            sum += compiled.evaluate(row);
+        }
+        return sum;
+    }
+
+    private static double runParsed(ExpressionEvaluator evaluator, int iterations) {
+        double sum = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (String formula : FORMULAS) {
+                sum += evaluator.evaluate(formula);
+            }
+        }
+        return sum;
+    }
+
+    private static double runCompiled(CompiledExpression[] compiled, int iterations) {
+        double sum = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (CompiledExpression expression : compiled) {
+                sum += expression.evaluate();
+            }
+        }
+        return sum;
+    }
+}
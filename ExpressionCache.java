@@ -0,0 +1,152 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded cache of compiled expressions, shared between threads.
+//
+// Entries are keyed by the normalized text (whitespace removed, optionally
+// lower-cased), so differently spaced spellings of a formula share one
+// entry. Normalizing text that is already normal is a scan that allocates
+// nothing, so a repeated formula costs that scan and one hash lookup; only
+// a miss is parsed, straight from the normalized text.
+//
+// The cache is split into segments, each a LinkedHashMap guarded by its own
+// lock, so threads working on different formulas rarely contend.
+final class ExpressionCache {
+
+    enum Policy {
+        // Evict the entry that was used least recently
+        LRU,
+        // Evict the entry that was added first, regardless of use
+        FIFO
+    }
+
+    private static final int MAX_SEGMENTS = 16;
+
+    // ExpressionEvaluator keeps its parse position in fields, so every
+    // thread compiles with a parser of its own
+    private static final ThreadLocal<ExpressionEvaluator> PARSERS =
+        ThreadLocal.withInitial(ExpressionEvaluator::new);
+
+    private final Segment[] segments;
+    private final boolean lowerCase;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    ExpressionCache(int capacity, Policy policy) {
+        this(capacity, policy, false);
+    }
+
+    ExpressionCache(int capacity, Policy policy, boolean lowerCase) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        }
+        // Spread the capacity so the segment sizes add up to exactly capacity
+        int count = Math.min(MAX_SEGMENTS, capacity);
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            int perSegment = capacity / count + (i < capacity % count ? 1 : 0);
+            segments[i] = new Segment(perSegment, policy == Policy.LRU);
+        }
+        this.lowerCase = lowerCase;
+    }
+
+    public CompiledExpression get(String source) {
+        String normalized = normalize(source);
+        CompiledExpression expression = lookup(normalized);
+        if (expression != null) {
+            hits.increment();
+            return expression;
+        }
+
+        misses.increment();
+        expression = PARSERS.get().compileNormalized(normalized);
+        store(normalized, expression);
+        return expression;
+    }
+
+    public double evaluate(String source) {
+        return get(source).evaluate();
+    }
+
+    private CompiledExpression lookup(String key) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.get(key);
+        }
+    }
+
+    private void store(String key, CompiledExpression expression) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, expression);
+        }
+    }
+
+    private Segment segmentFor(String key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[(hash & 0x7fffffff) % segments.length];
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ExpressionCache[size=" + size() + ", hits=" + hitCount() + ", misses=" + missCount()
+               + ", evictions=" + evictionCount() + "]";
+    }
+
+    String normalize(String source) {
+        return ExpressionEvaluator.normalize(source, lowerCase);
+    }
+
+    private final class Segment extends LinkedHashMap<String, CompiledExpression> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity, boolean accessOrder) {
+            super(16, 0.75f, accessOrder);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CompiledExpression> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
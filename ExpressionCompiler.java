@@ -0,0 +1,317 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+
+// Turns an expression tree into a hidden class whose evaluate method is the
+// formula written out as straight-line bytecode, so the JIT can compile it
+// like hand-written Java instead of going through the tree's virtual calls.
+//
+// The generated code never branches, which keeps the class file simple: no
+// stack map frames are needed and the operand stack depth can be tracked
+// while emitting.
+final class ExpressionCompiler {
+
+    // Called by generated classes through their interface
+    interface Kernel {
+        double evaluate(double[] variables);
+    }
+
+    private static final String CLASS_NAME = "ExpressionKernel";
+    private static final String KERNEL_NAME = "ExpressionCompiler$Kernel";
+    private static final String FUNCTIONS_NAME = "MathFunctions";
+
+    // Opcodes used by the generator
+    private static final int ALOAD_0 = 0x2a, ALOAD_1 = 0x2b;
+    private static final int ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11;
+    private static final int DCONST_0 = 0x0e, DCONST_1 = 0x0f, LDC2_W = 0x14;
+    private static final int DALOAD = 0x31, DUP2 = 0x5c;
+    private static final int DADD = 0x63, DSUB = 0x67, DMUL = 0x6b, DDIV = 0x6f, DNEG = 0x77;
+    private static final int DRETURN = 0xaf, RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8;
+
+    private final ConstantPool pool = new ConstantPool();
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+    private int stack;
+    private int maxStack;
+
+    private ExpressionCompiler() {
+    }
+
+    // Thrown while generating when the tree cannot be compiled; compile
+    // turns it into a null result
+    private static final class NotCompilable extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        NotCompilable(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    // Compiles the tree into a new hidden class, or returns null if the tree
+    // contains a node the generator does not handle, the method would be too
+    // large, or the JVM rejects the class with a LinkageError (such as
+    // VerifyError); callers then keep the tree interpreter.
+    static Kernel compile(ExpressionNode root) {
+        try {
+            byte[] bytes = new ExpressionCompiler().generate(root);
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return (Kernel) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class))
+                                  .invoke();
+        } catch (NotCompilable | LinkageError e) {
+            return null;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException("Failed to compile expression", t);
+        }
+    }
+
+    private byte[] generate(ExpressionNode root) throws IOException, NotCompilable {
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef("java/lang/Object");
+        int kernel = pool.classRef(KERNEL_NAME);
+        int objectInit = pool.methodRef("java/lang/Object", "<init>", "()V");
+        int initName = pool.utf8("<init>");
+        int initType = pool.utf8("()V");
+        int evaluateName = pool.utf8("evaluate");
+        int evaluateType = pool.utf8("([D)D");
+        int codeName = pool.utf8("Code");
+
+        emit(root);
+        code.write(DRETURN);
+        if (code.size() > 65535) {
+            throw new NotCompilable("Expression too large to compile");
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(61); // Java 17 class file
+        pool.writeTo(out);
+        out.writeShort(0x0030); // ACC_FINAL | ACC_SUPER
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(kernel);
+        out.writeShort(0); // fields
+        out.writeShort(2); // methods
+
+        // public <init>() { super(); }
+        byte[] init = {ALOAD_0, (byte) INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit, (byte) RETURN};
+        writeMethod(out, initName, initType, codeName, 1, 1, init);
+
+        // public double evaluate(double[] variables) { return <expression>; }
+        writeMethod(out, evaluateName, evaluateType, codeName, maxStack, 2, code.toByteArray());
+
+        out.writeShort(0); // class attributes
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeMethod(DataOutputStream out, int name, int type, int codeName,
+                                    int maxStack, int maxLocals, byte[] body) throws IOException {
+        out.writeShort(0x0001); // ACC_PUBLIC
+        out.writeShort(name);
+        out.writeShort(type);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + body.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(body.length);
+        out.write(body);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // code attributes
+    }
+
+    private void emit(ExpressionNode node) throws NotCompilable {
+        if (node instanceof ExpressionNode.Constant) {
+            emitConstant(((ExpressionNode.Constant) node).value);
+        } else if (node instanceof ExpressionNode.Variable) {
+            code.write(ALOAD_1);
+            push(1);
+            emitInt(((ExpressionNode.Variable) node).index);
+            code.write(DALOAD);
+            pop(2);
+            push(2);
+        } else if (node instanceof ExpressionNode.Negate) {
+            emit(((ExpressionNode.Negate) node).operand);
+            code.write(DNEG);
+        } else if (node instanceof ExpressionNode.Square) {
+            emit(((ExpressionNode.Square) node).operand);
+            code.write(DUP2);
+            push(2);
+            code.write(DMUL);
+            pop(2);
+        } else if (node instanceof ExpressionNode.UnaryCall) {
+            ExpressionNode.UnaryCall call = (ExpressionNode.UnaryCall) node;
+            emit(call.operand);
+            emitInvokeStatic(FUNCTIONS_NAME, call.function.name, "(D)D");
+        } else if (node instanceof ExpressionNode.Binary) {
+            ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+            emit(binary.left);
+            emit(binary.right);
+            if (node instanceof ExpressionNode.Power) {
+                emitInvokeStatic("java/lang/Math", "pow", "(DD)D");
+                return;
+            }
+            if (node instanceof ExpressionNode.BinaryCall) {
+                emitInvokeStatic(FUNCTIONS_NAME, ((ExpressionNode.BinaryCall) node).function.name, "(DD)D");
+                return;
+            }
+            if (node instanceof ExpressionNode.Add) {
+                code.write(DADD);
+            } else if (node instanceof ExpressionNode.Subtract) {
+                code.write(DSUB);
+            } else if (node instanceof ExpressionNode.Multiply) {
+                code.write(DMUL);
+            } else if (node instanceof ExpressionNode.Divide) {
+                code.write(DDIV);
+            } else {
+                throw new NotCompilable("Cannot compile " + node.getClass().getSimpleName());
+            }
+            pop(2);
+        } else {
+            throw new NotCompilable("Cannot compile " + node.getClass().getSimpleName());
+        }
+    }
+
+    private void emitConstant(double value) throws NotCompilable {
+        long bits = Double.doubleToRawLongBits(value);
+        if (bits == 0L) {
+            code.write(DCONST_0);
+        } else if (bits == Double.doubleToRawLongBits(1.0)) {
+            code.write(DCONST_1);
+        } else {
+            writeOp16(LDC2_W, pool.doubleConstant(value));
+        }
+        push(2);
+    }
+
+    private void emitInt(int value) throws NotCompilable {
+        if (value <= 5) {
+            code.write(ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            code.write(BIPUSH);
+            code.write(value);
+        } else if (value <= Short.MAX_VALUE) {
+            writeOp16(SIPUSH, value);
+        } else {
+            throw new NotCompilable("Too many variables to compile");
+        }
+        push(1);
+    }
+
+    // Emits a static call taking and returning doubles; argument count is
+    // read from the descriptor's (D...)D shape.
+    private void emitInvokeStatic(String owner, String name, String descriptor) throws NotCompilable {
+        writeOp16(INVOKESTATIC, pool.methodRef(owner, name, descriptor));
+        int arguments = descriptor.indexOf(')') - 1;
+        pop(2 * arguments);
+        push(2);
+    }
+
+    private void writeOp16(int opcode, int operand) {
+        code.write(opcode);
+        code.write(operand >> 8);
+        code.write(operand);
+    }
+
+    private void push(int slots) {
+        stack += slots;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    private void pop(int slots) {
+        stack -= slots;
+    }
+
+    // Constant pool with de-duplication of repeated entries
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<Object, Integer> entries = new HashMap<>();
+        private int next = 1;
+
+        int utf8(String value) throws NotCompilable {
+            Integer index = entries.get(value);
+            if (index != null) return index;
+            try {
+                out.writeByte(1);
+                out.writeUTF(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return add(value, 1);
+        }
+
+        int classRef(String internalName) throws NotCompilable {
+            String key = "Class:" + internalName;
+            Integer index = entries.get(key);
+            if (index != null) return index;
+            int name = utf8(internalName);
+            write(7, name);
+            return add(key, 1);
+        }
+
+        int methodRef(String owner, String name, String descriptor) throws NotCompilable {
+            String key = "Method:" + owner + "." + name + descriptor;
+            Integer index = entries.get(key);
+            if (index != null) return index;
+            int ownerIndex = classRef(owner);
+            int nameIndex = utf8(name);
+            int typeIndex = utf8(descriptor);
+            String natKey = "NameAndType:" + name + descriptor;
+            Integer nameAndType = entries.get(natKey);
+            if (nameAndType == null) {
+                write(12, nameIndex, typeIndex);
+                nameAndType = add(natKey, 1);
+            }
+            write(10, ownerIndex, nameAndType);
+            return add(key, 1);
+        }
+
+        int doubleConstant(double value) throws NotCompilable {
+            Long key = Double.doubleToRawLongBits(value);
+            Integer index = entries.get(key);
+            if (index != null) return index;
+            try {
+                out.writeByte(6);
+                out.writeLong(key);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return add(key, 2); // doubles take two pool slots
+        }
+
+        private void write(int tag, int... operands) {
+            try {
+                out.writeByte(tag);
+                for (int operand : operands) out.writeShort(operand);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private int add(Object key, int slots) throws NotCompilable {
+            int index = next;
+            if (index + slots > 65535) {
+                throw new NotCompilable("Constant pool overflow");
+            }
+            entries.put(key, index);
+            next += slots;
+            return index;
+        }
+
+        void writeTo(DataOutputStream target) throws IOException {
+            out.flush();
+            target.writeShort(next);
+            bytes.writeTo(target);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Recursive-descent parser for arithmetic expressions with named variables,
+// the functions and constants of MathFunctions (sin(x), max(a, b), pi, ...),
+// prefix √ and the postfix operators ! (factorial), ² (square) and °. The °
+// only marks a value as degrees, which the trigonometric functions already
+// expect, so it does not change the value.
+// The parser keeps its position in instance fields, so one evaluator must not
+// be shared between threads; the CompiledExpression it returns can be.
+class ExpressionEvaluator {
+    private int pos = -1;
+    private int ch;
+    private String expression;
+    private Map<String, Integer> variables;
+
+    public double evaluate(String expression) {
+        return compile(expression).evaluate();
+    }
+
+    // Evaluates the formula once per row of the given variable columns
+    public double[] evaluate(String formula, Map<String, double[]> columns) {
+        return compile(formula).evaluateColumns(columns);
+    }
+
+    public CompiledExpression compile(String expression) {
+        return compileNormalized(normalize(expression, false));
+    }
+
+    // For text that normalize has already been applied to, as the
+    // expression cache does before looking it up
+    CompiledExpression compileNormalized(String expression) {
+        this.expression = expression;
+        this.pos = -1;
+        this.variables = new LinkedHashMap<>();
+        nextChar();
+        ExpressionNode root = parseExpression();
+        if (pos < this.expression.length()) {
+            throw new RuntimeException("Unexpected character: " + (char)ch);
+        }
+        String[] names = variables.keySet().toArray(new String[0]);
+        // The unoptimized tree is kept for precision mode, where folding
+        // constants in double arithmetic would lose digits
+        return new CompiledExpression(this.expression, ExpressionOptimizer.optimize(root), root, names);
+    }
+
+    // Removes whitespace (as Character.isWhitespace defines it, the one
+    // definition the parser and the cache share) and, if asked, lower-cases
+    // letters in one pass. Returns the input itself when nothing needs to
+    // change.
+    static String normalize(String source, boolean lowerCase) {
+        int length = source.length();
+        int i = 0;
+        while (i < length) {
+            char c = source.charAt(i);
+            if (Character.isWhitespace(c) || (lowerCase && Character.isUpperCase(c))) break;
+            i++;
+        }
+        if (i == length) return source;
+
+        StringBuilder sb = new StringBuilder(length);
+        sb.append(source, 0, i);
+        for (; i < length; i++) {
+            char c = source.charAt(i);
+            if (Character.isWhitespace(c)) continue;
+            sb.append(lowerCase ? Character.toLowerCase(c) : c);
+        }
+        return sb.toString();
+    }
+
+    private void nextChar() {
+        ch = (++pos < expression.length()) ? expression.charAt(pos) : -1;
+    }
+
+    private boolean eat(int charToEat) {
+        while (ch == ' ') nextChar();
+        if (ch == charToEat) {
+            nextChar();
+            return true;
+        }
+        return false;
+    }
+
+    private ExpressionNode parseExpression() {
+        ExpressionNode x = parseTerm();
+        for (;;) {
+            if (eat('+')) x = new ExpressionNode.Add(x, parseTerm());
+            else if (eat('-')) x = new ExpressionNode.Subtract(x, parseTerm());
+            else return x;
+        }
+    }
+
+    private ExpressionNode parseTerm() {
+        ExpressionNode x = parseFactor();
+        for (;;) {
+            if (eat('*')) x = new ExpressionNode.Multiply(x, parseFactor());
+            else if (eat('/')) x = new ExpressionNode.Divide(x, parseFactor());
+            else return x;
+        }
+    }
+
+    private ExpressionNode parseFactor() {
+        if (eat('+')) return parseFactor();
+        if (eat('-')) return new ExpressionNode.Negate(parseFactor());
+        if (eat('√')) return new ExpressionNode.UnaryCall(MathFunctions.unary("sqrt"), parseFactor());
+
+        ExpressionNode x;
+        int startPos = this.pos;
+        if (eat('(')) {
+            x = parseExpression();
+            eat(')');
+        } else if ((ch >= '0' && ch <= '9') || ch == '.') {
+            while ((ch >= '0' && ch <= '9') || ch == '.') nextChar();
+            x = new ExpressionNode.Constant(NumberParser.parse(expression, startPos, this.pos),
+                                            expression.substring(startPos, this.pos));
+        } else if (eat('π')) {
+            x = new ExpressionNode.Constant(Math.PI, "pi");
+        } else if (isIdentifierStart(ch)) {
+            while (isIdentifierPart(ch)) nextChar();
+            String name = expression.substring(startPos, this.pos);
+            x = eat('(') ? call(name) : name(name);
+        } else {
+            throw new RuntimeException("Unexpected: " + (char)ch);
+        }
+
+        // Postfix operators bind tighter than ^
+        for (;;) {
+            if (eat('!')) x = new ExpressionNode.UnaryCall(MathFunctions.unary("factorial"), x);
+            else if (eat('²')) x = new ExpressionNode.Square(x);
+            else if (!eat('°')) break;
+        }
+
+        if (eat('^')) x = new ExpressionNode.Power(x, parseFactor());
+
+        return x;
+    }
+
+    // Called with the opening parenthesis already consumed
+    private ExpressionNode call(String name) {
+        ExpressionNode first = parseExpression();
+        if (eat(',')) {
+            ExpressionNode second = parseExpression();
+            expectClosingParenthesis(name);
+            MathFunctions.Binary function = MathFunctions.binary(name);
+            if (function == null) {
+                throw new RuntimeException(MathFunctions.unary(name) != null
+                    ? "Function " + name + " takes one argument"
+                    : "Unknown function: " + name);
+            }
+            return new ExpressionNode.BinaryCall(function, first, second);
+        }
+        expectClosingParenthesis(name);
+        MathFunctions.Unary function = MathFunctions.unary(name);
+        if (function == null) {
+            throw new RuntimeException(MathFunctions.binary(name) != null
+                ? "Function " + name + " takes two arguments"
+                : "Unknown function: " + name);
+        }
+        return new ExpressionNode.UnaryCall(function, first);
+    }
+
+    private void expectClosingParenthesis(String function) {
+        if (!eat(')')) {
+            throw new RuntimeException("Missing ')' after arguments of " + function);
+        }
+    }
+
+    // A bare name is a constant such as pi if the library knows it, otherwise
+    // a variable
+    private ExpressionNode name(String name) {
+        Double constant = MathFunctions.constant(name);
+        return constant != null ? new ExpressionNode.Constant(constant, name) : variable(name);
+    }
+
+    private ExpressionNode variable(String name) {
+        Integer index = variables.get(name);
+        if (index == null) {
+            index = variables.size();
+            variables.put(name, index);
+        }
+        return new ExpressionNode.Variable(name, index);
+    }
+
+    private static boolean isIdentifierStart(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean isIdentifierPart(int c) {
+        return isIdentifierStart(c) || (c >= '0' && c <= '9');
+    }
+}
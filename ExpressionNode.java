@@ -0,0 +1,260 @@
+// Node of a parsed expression tree. Nodes are immutable once built, so a
+// compiled tree can be evaluated from any number of threads at once.
+//
+// Every node can be evaluated for a single row (one value per variable) or
+// for a block of rows at a time. Block evaluation works a column at a time:
+// each node runs one simple loop over primitive arrays, which the JIT can
+// unroll and vectorize, instead of walking the tree once per row.
+abstract class ExpressionNode {
+
+    abstract double evaluate(double[] variables);
+
+    // Writes the value of this node for rows [offset, offset + length) of the
+    // given variable columns into out[0, length). Intermediate results go into
+    // scratch[depth], scratch[depth + 1], ...
+    abstract void evaluate(double[][] columns, int offset, int length,
+                           double[] out, double[][] scratch, int depth);
+
+    // Number of scratch buffers block evaluation of this node needs
+    abstract int scratchDepth();
+
+    static final class Constant extends ExpressionNode {
+        final double value;
+        // The literal ("0.1") or constant name ("pi") it was parsed from, so
+        // DecimalEvaluator can read it exactly; null for folded constants
+        final String text;
+
+        Constant(double value) {
+            this(value, null);
+        }
+
+        Constant(double value, String text) {
+            this.value = value;
+            this.text = text;
+        }
+
+        double evaluate(double[] variables) {
+            return value;
+        }
+
+        void evaluate(double[][] columns, int offset, int length,
+                      double[] out, double[][] scratch, int depth) {
+            java.util.Arrays.fill(out, 0, length, value);
+        }
+
+        int scratchDepth() {
+            return 0;
+        }
+    }
+
+    static final class Variable extends ExpressionNode {
+        final String name;
+        final int index;
+
+        Variable(String name, int index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        double evaluate(double[] variables) {
+            return variables[index];
+        }
+
+        void evaluate(double[][] columns, int offset, int length,
+                      double[] out, double[][] scratch, int depth) {
+            System.arraycopy(columns[index], offset, out, 0, length);
+        }
+
+        int scratchDepth() {
+            return 0;
+        }
+    }
+
+    static final class Negate extends ExpressionNode {
+        final ExpressionNode operand;
+
+        Negate(ExpressionNode operand) {
+            this.operand = operand;
+        }
+
+        double evaluate(double[] variables) {
+            return -operand.evaluate(variables);
+        }
+
+        void evaluate(double[][] columns, int offset, int length,
+                      double[] out, double[][] scratch, int depth) {
+            operand.evaluate(columns, offset, length, out, scratch, depth);
+            for (int i = 0; i < length; i++) out[i] = -out[i];
+        }
+
+        int scratchDepth() {
+            return operand.scratchDepth();
+        }
+    }
+
+    // x^2 after strength reduction: one multiplication instead of Math.pow,
+    // with the operand evaluated only once
+    static final class Square extends ExpressionNode {
+        final ExpressionNode operand;
+
+        Square(ExpressionNode operand) {
+            this.operand = operand;
+        }
+
+        double evaluate(double[] variables) {
+            double value = operand.evaluate(variables);
+            return value * value;
+        }
+
+        void evaluate(double[][] columns, int offset, int length,
+                      double[] out, double[][] scratch, int depth) {
+            operand.evaluate(columns, offset, length, out, scratch, depth);
+            for (int i = 0; i < length; i++) out[i] *= out[i];
+        }
+
+        int scratchDepth() {
+            return operand.scratchDepth();
+        }
+    }
+
+    // Call of a one-argument function from MathFunctions
+    static final class UnaryCall extends ExpressionNode {
+        final MathFunctions.Unary function;
+        final ExpressionNode operand;
+
+        UnaryCall(MathFunctions.Unary function, ExpressionNode operand) {
+            this.function = function;
+            this.operand = operand;
+        }
+
+        double evaluate(double[] variables) {
+            return function.operator.applyAsDouble(operand.evaluate(variables));
+        }
+
+        void evaluate(double[][] columns, int offset, int length,
+                      double[] out, double[][] scratch, int depth) {
+            operand.evaluate(columns, offset, length, out, scratch, depth);
+            java.util.function.DoubleUnaryOperator operator = function.operator;
+            for (int i = 0; i < length; i++) out[i] = operator.applyAsDouble(out[i]);
+        }
+
+        int scratchDepth() {
+            return operand.scratchDepth();
+        }
+    }
+
+    // Base for the two-operand nodes: the left operand is evaluated straight
+    // into the output block and the right operand into one scratch buffer.
+    abstract static class Binary extends ExpressionNode {
+        final ExpressionNode left, right;
+
+        Binary(ExpressionNode left, ExpressionNode right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        final void evaluate(double[][] columns, int offset, int length,
+                            double[] out, double[][] scratch, int depth) {
+            double[] other = scratch[depth];
+            left.evaluate(columns, offset, length, out, scratch, depth);
+            right.evaluate(columns, offset, length, other, scratch, depth + 1);
+            combine(out, other, length);
+        }
+
+        final int scratchDepth() {
+            return Math.max(left.scratchDepth(), right.scratchDepth() + 1);
+        }
+
+        // out[i] = out[i] (op) other[i] for every row in the block
+        abstract void combine(double[] out, double[] other, int length);
+    }
+
+    static final class Add extends Binary {
+        Add(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        double evaluate(double[] variables) {
+            return left.evaluate(variables) + right.evaluate(variables);
+        }
+
+        void combine(double[] out, double[] other, int length) {
+            for (int i = 0; i < length; i++) out[i] += other[i];
+        }
+    }
+
+    static final class Subtract extends Binary {
+        Subtract(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        double evaluate(double[] variables) {
+            return left.evaluate(variables) - right.evaluate(variables);
+        }
+
+        void combine(double[] out, double[] other, int length) {
+            for (int i = 0; i < length; i++) out[i] -= other[i];
+        }
+    }
+
+    static final class Multiply extends Binary {
+        Multiply(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        double evaluate(double[] variables) {
+            return left.evaluate(variables) * right.evaluate(variables);
+        }
+
+        void combine(double[] out, double[] other, int length) {
+            for (int i = 0; i < length; i++) out[i] *= other[i];
+        }
+    }
+
+    static final class Divide extends Binary {
+        Divide(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        double evaluate(double[] variables) {
+            return left.evaluate(variables) / right.evaluate(variables);
+        }
+
+        void combine(double[] out, double[] other, int length) {
+            for (int i = 0; i < length; i++) out[i] /= other[i];
+        }
+    }
+
+    static final class Power extends Binary {
+        Power(ExpressionNode base, ExpressionNode exponent) {
+            super(base, exponent);
+        }
+
+        double evaluate(double[] variables) {
+            return Math.pow(left.evaluate(variables), right.evaluate(variables));
+        }
+
+        void combine(double[] out, double[] other, int length) {
+            for (int i = 0; i < length; i++) out[i] = Math.pow(out[i], other[i]);
+        }
+    }
+
+    // Call of a two-argument function from MathFunctions
+    static final class BinaryCall extends Binary {
+        final MathFunctions.Binary function;
+
+        BinaryCall(MathFunctions.Binary function, ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+            this.function = function;
+        }
+
+        double evaluate(double[] variables) {
+            return function.operator.applyAsDouble(left.evaluate(variables), right.evaluate(variables));
+        }
+
+        void combine(double[] out, double[] other, int length) {
+            java.util.function.DoubleBinaryOperator operator = function.operator;
+            for (int i = 0; i < length; i++) out[i] = operator.applyAsDouble(out[i], other[i]);
+        }
+    }
+}
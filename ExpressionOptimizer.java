@@ -0,0 +1,127 @@
+// Rewrites a parsed expression tree into a cheaper equivalent before it is
+// evaluated: subtrees without variables are folded into constants, identity
+// operations are dropped and x^2 becomes a multiplication.
+//
+// Rewrites only apply where they give bit-for-bit the same result under IEEE
+// arithmetic. That is why x-0 is dropped but x+0 is not: for x = -0 the sum
+// is +0, and the sign of a zero decides the sign of a later division by it.
+final class ExpressionOptimizer {
+
+    private ExpressionOptimizer() {
+    }
+
+    static ExpressionNode optimize(ExpressionNode node) {
+        if (node instanceof ExpressionNode.Negate) {
+            return negate(optimize(((ExpressionNode.Negate) node).operand));
+        }
+        if (node instanceof ExpressionNode.Square) {
+            return square(optimize(((ExpressionNode.Square) node).operand));
+        }
+        if (node instanceof ExpressionNode.UnaryCall) {
+            ExpressionNode.UnaryCall call = (ExpressionNode.UnaryCall) node;
+            ExpressionNode operand = optimize(call.operand);
+            // Library functions are pure, so constant arguments fold
+            if (isConstant(operand)) return constant(call.function.operator.applyAsDouble(value(operand)));
+            return new ExpressionNode.UnaryCall(call.function, operand);
+        }
+        if (node instanceof ExpressionNode.Binary) {
+            ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+            ExpressionNode left = optimize(binary.left);
+            ExpressionNode right = optimize(binary.right);
+            if (node instanceof ExpressionNode.Add) return add(left, right);
+            if (node instanceof ExpressionNode.Subtract) return subtract(left, right);
+            if (node instanceof ExpressionNode.Multiply) return multiply(left, right);
+            if (node instanceof ExpressionNode.Divide) return divide(left, right);
+            if (node instanceof ExpressionNode.Power) return power(left, right);
+            if (node instanceof ExpressionNode.BinaryCall) {
+                MathFunctions.Binary function = ((ExpressionNode.BinaryCall) node).function;
+                if (isConstant(left) && isConstant(right)) {
+                    return constant(function.operator.applyAsDouble(value(left), value(right)));
+                }
+                return new ExpressionNode.BinaryCall(function, left, right);
+            }
+        }
+        return node;
+    }
+
+    private static ExpressionNode negate(ExpressionNode operand) {
+        if (operand instanceof ExpressionNode.Constant) {
+            return constant(-value(operand));
+        }
+        if (operand instanceof ExpressionNode.Negate) {
+            return ((ExpressionNode.Negate) operand).operand;
+        }
+        return new ExpressionNode.Negate(operand);
+    }
+
+    private static ExpressionNode square(ExpressionNode operand) {
+        if (operand instanceof ExpressionNode.Constant) {
+            double value = value(operand);
+            return constant(value * value);
+        }
+        return new ExpressionNode.Square(operand);
+    }
+
+    private static ExpressionNode add(ExpressionNode left, ExpressionNode right) {
+        if (isConstant(left) && isConstant(right)) return constant(value(left) + value(right));
+        if (isNegativeZero(right)) return left;
+        if (isNegativeZero(left)) return right;
+        return new ExpressionNode.Add(left, right);
+    }
+
+    private static ExpressionNode subtract(ExpressionNode left, ExpressionNode right) {
+        if (isConstant(left) && isConstant(right)) return constant(value(left) - value(right));
+        if (isPositiveZero(right)) return left;
+        return new ExpressionNode.Subtract(left, right);
+    }
+
+    private static ExpressionNode multiply(ExpressionNode left, ExpressionNode right) {
+        if (isConstant(left) && isConstant(right)) return constant(value(left) * value(right));
+        if (isConstant(right, 1)) return left;
+        if (isConstant(left, 1)) return right;
+        if (isConstant(right, -1)) return negate(left);
+        if (isConstant(left, -1)) return negate(right);
+        return new ExpressionNode.Multiply(left, right);
+    }
+
+    private static ExpressionNode divide(ExpressionNode left, ExpressionNode right) {
+        if (isConstant(left) && isConstant(right)) return constant(value(left) / value(right));
+        if (isConstant(right, 1)) return left;
+        if (isConstant(right, -1)) return negate(left);
+        return new ExpressionNode.Divide(left, right);
+    }
+
+    private static ExpressionNode power(ExpressionNode base, ExpressionNode exponent) {
+        if (isConstant(base) && isConstant(exponent)) return constant(Math.pow(value(base), value(exponent)));
+        // Math.pow(x, 0) is 1 for every x, NaN included
+        if (isConstant(exponent, 0)) return constant(1);
+        if (isConstant(exponent, 1)) return base;
+        if (isConstant(exponent, 2)) return square(base);
+        return new ExpressionNode.Power(base, exponent);
+    }
+
+    private static boolean isConstant(ExpressionNode node) {
+        return node instanceof ExpressionNode.Constant;
+    }
+
+    // Compares by value, so +0 and -0 both match 0
+    private static boolean isConstant(ExpressionNode node, double value) {
+        return isConstant(node) && value(node) == value;
+    }
+
+    private static boolean isPositiveZero(ExpressionNode node) {
+        return isConstant(node) && Double.doubleToRawLongBits(value(node)) == 0L;
+    }
+
+    private static boolean isNegativeZero(ExpressionNode node) {
+        return isConstant(node) && Double.doubleToRawLongBits(value(node)) == Double.doubleToRawLongBits(-0.0);
+    }
+
+    private static double value(ExpressionNode node) {
+        return ((ExpressionNode.Constant) node).value;
+    }
+
+    private static ExpressionNode constant(double value) {
+        return new ExpressionNode.Constant(value);
+    }
+}
@@ -0,0 +1,178 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.DoubleConsumer;
+
+// Reads the numbers in a file through FileChannel.map, for the statistics
+// calculator. Two formats are understood:
+//
+//   TEXT       numbers separated by whitespace, commas, semicolons or quotes,
+//              as in CSV; other tokens, such as a header row, are skipped
+//   DOUBLE_LE  raw little-endian IEEE 754 doubles, 8 bytes each
+//
+// Files named .f64 or .bin are raw doubles. Any other file is read as text
+// unless its first few kilobytes contain control bytes that text never has
+// (raw doubles almost always do: 1.0 is 00 00 00 00 00 00 F0 3F). Callers
+// that know the format pass it explicitly instead.
+//
+// Text numbers are parsed directly from the mapped bytes by NumberParser,
+// without a String per token, and values go straight to a DoubleConsumer or
+// a double[] without boxing. Files of any size are mapped in windows of 256 MB.
+public final class MappedNumberFile {
+
+    public enum Format {
+        TEXT, DOUBLE_LE
+    }
+
+    private static final long WINDOW = 1L << 28;
+    // How much of a file detectFormat looks at
+    private static final int SNIFF_BYTES = 4096;
+
+    private final Path path;
+    private final Format format;
+
+    public MappedNumberFile(Path path, Format format) {
+        this.path = path;
+        this.format = format;
+    }
+
+    public static Format detectFormat(Path path) throws IOException {
+        String name = path.getFileName().toString().toLowerCase();
+        if (name.endsWith(".f64") || name.endsWith(".bin")) {
+            return Format.DOUBLE_LE;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate((int) Math.min(SNIFF_BYTES, channel.size()));
+            while (head.hasRemaining() && channel.read(head) >= 0) {
+                // Read until the buffer is full or the file ends
+            }
+            for (int i = 0; i < head.position(); i++) {
+                byte b = head.get(i);
+                if ((b >= 0 && b < 0x20 && !isSeparator(b)) || b == 0x7F) {
+                    return Format.DOUBLE_LE;
+                }
+            }
+        }
+        return Format.TEXT;
+    }
+
+    public void forEach(DoubleConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (format == Format.DOUBLE_LE) {
+                readDoubles(channel, consumer);
+            } else {
+                readText(channel, consumer);
+            }
+        }
+    }
+
+    // Every number in the file, in order
+    public double[] toArray() throws IOException {
+        if (format == Format.DOUBLE_LE) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long count = checkDoubleFile(channel);
+                if (count > Integer.MAX_VALUE - 8) {
+                    throw new RuntimeException("Too many values to load at once: " + count);
+                }
+                double[] values = new double[(int) count];
+                int filled = 0;
+                for (long position = 0; position < channel.size(); position += WINDOW) {
+                    DoubleBuffer doubles = map(channel, position).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+                    int length = doubles.remaining();
+                    doubles.get(values, filled, length);
+                    filled += length;
+                }
+                return values;
+            }
+        }
+        double[][] values = {new double[1024]};
+        int[] size = {0};
+        forEach(value -> {
+            if (size[0] == values[0].length) {
+                if (size[0] == Integer.MAX_VALUE - 8) {
+                    throw new RuntimeException("Too many values to load at once");
+                }
+                values[0] = Arrays.copyOf(values[0], (int) Math.min(Integer.MAX_VALUE - 8, size[0] * 2L));
+            }
+            values[0][size[0]++] = value;
+        });
+        return Arrays.copyOf(values[0], size[0]);
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position) throws IOException {
+        long length = Math.min(WINDOW, channel.size() - position);
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    private static long checkDoubleFile(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size % Double.BYTES != 0) {
+            throw new RuntimeException("File size " + size + " is not a whole number of doubles");
+        }
+        return size / Double.BYTES;
+    }
+
+    private static void readDoubles(FileChannel channel, DoubleConsumer consumer) throws IOException {
+        checkDoubleFile(channel);
+        for (long position = 0; position < channel.size(); position += WINDOW) {
+            ByteBuffer buffer = map(channel, position).order(ByteOrder.LITTLE_ENDIAN);
+            int limit = buffer.limit();
+            for (int i = 0; i < limit; i += Double.BYTES) {
+                consumer.accept(buffer.getDouble(i));
+            }
+        }
+    }
+
+    private static void readText(FileChannel channel, DoubleConsumer consumer) throws IOException {
+        long size = channel.size();
+        long position = 0;
+        while (position < size) {
+            MappedByteBuffer buffer = map(channel, position);
+            int limit = buffer.limit();
+            int start = -1;
+            for (int i = 0; i < limit; i++) {
+                if (isSeparator(buffer.get(i))) {
+                    if (start >= 0) {
+                        emit(buffer, start, i, consumer);
+                        start = -1;
+                    }
+                } else if (start < 0) {
+                    start = i;
+                }
+            }
+            if (start < 0 || position + limit == size) {
+                if (start >= 0) emit(buffer, start, limit, consumer);
+                position += limit;
+            } else if (start == 0) {
+                throw new RuntimeException("Token longer than " + WINDOW + " bytes at offset " + position);
+            } else {
+                // The last token runs past the window; the next window starts with it
+                position += start;
+            }
+        }
+    }
+
+    private static boolean isSeparator(byte b) {
+        switch (b) {
+            case ' ': case '\t': case '\n': case '\r': case '\f': case 0x0B:
+            case ',': case ';': case '"':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void emit(ByteBuffer buffer, int start, int end, DoubleConsumer consumer) {
+        try {
+            consumer.accept(NumberParser.parse(buffer, start, end));
+        } catch (NumberFormatException e) {
+            // Skip non-numeric parts
+        }
+    }
+}
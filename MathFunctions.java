@@ -0,0 +1,191 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+// Functions and named constants available in expressions. The parser looks a
+// name up once, when the expression is compiled, and the resulting node
+// holds the method reference directly, so evaluation never compares names.
+//
+// Every function is a public static method of this class with the same name
+// as in the registry; ExpressionCompiler relies on that to call it directly
+// from generated bytecode. Trigonometry works in degrees, like the
+// calculator always has.
+final class MathFunctions {
+
+    static final class Unary {
+        final String name;
+        final DoubleUnaryOperator operator;
+
+        Unary(String name, DoubleUnaryOperator operator) {
+            this.name = name;
+            this.operator = operator;
+        }
+    }
+
+    static final class Binary {
+        final String name;
+        final DoubleBinaryOperator operator;
+
+        Binary(String name, DoubleBinaryOperator operator) {
+            this.name = name;
+            this.operator = operator;
+        }
+    }
+
+    private static final Map<String, Unary> UNARY = new HashMap<>();
+    private static final Map<String, Binary> BINARY = new HashMap<>();
+    private static final Map<String, Double> CONSTANTS = new HashMap<>();
+
+    // n! for every n whose factorial is a finite double
+    private static final double[] FACTORIALS = new double[171];
+
+    static {
+        unary("sin", MathFunctions::sin);
+        unary("cos", MathFunctions::cos);
+        unary("tan", MathFunctions::tan);
+        unary("asin", MathFunctions::asin);
+        unary("acos", MathFunctions::acos);
+        unary("atan", MathFunctions::atan);
+        unary("sqrt", MathFunctions::sqrt);
+        unary("cbrt", MathFunctions::cbrt);
+        unary("log", MathFunctions::log);
+        unary("ln", MathFunctions::ln);
+        unary("exp", MathFunctions::exp);
+        unary("abs", MathFunctions::abs);
+        unary("floor", MathFunctions::floor);
+        unary("ceil", MathFunctions::ceil);
+        unary("round", MathFunctions::round);
+        unary("rad", MathFunctions::rad);
+        unary("deg", MathFunctions::deg);
+        unary("factorial", MathFunctions::factorial);
+
+        binary("min", MathFunctions::min);
+        binary("max", MathFunctions::max);
+        binary("pow", MathFunctions::pow);
+        binary("hypot", MathFunctions::hypot);
+
+        CONSTANTS.put("pi", Math.PI);
+        CONSTANTS.put("π", Math.PI);
+        CONSTANTS.put("e", Math.E);
+
+        FACTORIALS[0] = 1;
+        for (int i = 1; i < FACTORIALS.length; i++) {
+            FACTORIALS[i] = FACTORIALS[i - 1] * i;
+        }
+    }
+
+    private MathFunctions() {
+    }
+
+    private static void unary(String name, DoubleUnaryOperator operator) {
+        UNARY.put(name, new Unary(name, operator));
+    }
+
+    private static void binary(String name, DoubleBinaryOperator operator) {
+        BINARY.put(name, new Binary(name, operator));
+    }
+
+    static Unary unary(String name) {
+        return UNARY.get(name);
+    }
+
+    static Binary binary(String name) {
+        return BINARY.get(name);
+    }
+
+    static Double constant(String name) {
+        return CONSTANTS.get(name);
+    }
+
+    public static double sin(double degrees) {
+        return Math.sin(Math.toRadians(degrees));
+    }
+
+    public static double cos(double degrees) {
+        return Math.cos(Math.toRadians(degrees));
+    }
+
+    public static double tan(double degrees) {
+        return Math.tan(Math.toRadians(degrees));
+    }
+
+    public static double asin(double x) {
+        return Math.toDegrees(Math.asin(x));
+    }
+
+    public static double acos(double x) {
+        return Math.toDegrees(Math.acos(x));
+    }
+
+    public static double atan(double x) {
+        return Math.toDegrees(Math.atan(x));
+    }
+
+    public static double sqrt(double x) {
+        return Math.sqrt(x);
+    }
+
+    public static double cbrt(double x) {
+        return Math.cbrt(x);
+    }
+
+    public static double log(double x) {
+        return Math.log10(x);
+    }
+
+    public static double ln(double x) {
+        return Math.log(x);
+    }
+
+    public static double exp(double x) {
+        return Math.exp(x);
+    }
+
+    public static double abs(double x) {
+        return Math.abs(x);
+    }
+
+    public static double floor(double x) {
+        return Math.floor(x);
+    }
+
+    public static double ceil(double x) {
+        return Math.ceil(x);
+    }
+
+    public static double round(double x) {
+        return Math.rint(x);
+    }
+
+    public static double rad(double degrees) {
+        return Math.toRadians(degrees);
+    }
+
+    public static double deg(double radians) {
+        return Math.toDegrees(radians);
+    }
+
+    // Defined for non-negative whole numbers only; anything else is NaN
+    public static double factorial(double n) {
+        if (n < 0 || n != Math.floor(n)) return Double.NaN;
+        if (n >= FACTORIALS.length) return Double.POSITIVE_INFINITY;
+        return FACTORIALS[(int) n];
+    }
+
+    public static double min(double a, double b) {
+        return Math.min(a, b);
+    }
+
+    public static double max(double a, double b) {
+        return Math.max(a, b);
+    }
+
+    public static double pow(double a, double b) {
+        return Math.pow(a, b);
+    }
+
+    public static double hypot(double a, double b) {
+        return Math.hypot(a, b);
+    }
+}
@@ -0,0 +1,232 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Fixed-point money: amounts are longs counting the smallest unit of a
+// given scale, such as cents (scale 2) or micro-units (scale 6). A Money
+// instance is the context, holding the scale and the rounding mode, and
+// every operation that can lose digits rounds with that mode. Nothing is
+// rounded implicitly, and any result that does not fit a long throws
+// ArithmeticException, as BigDecimal.longValueExact does.
+//
+// Sums are exact integer additions. Multiplying an amount by a double
+// factor (a rate or growth factor) rounds the exact product of the two
+// numbers. The product comes from one multiplication plus Math.fma for its
+// error term, so the hot path allocates nothing and is many times faster
+// than BigDecimal. BigDecimal is used only when an amount is too large for
+// a double to hold exactly.
+public final class Money {
+    public static final Money CENTS = new Money(2, RoundingMode.HALF_EVEN);
+    public static final Money MICROS = new Money(6, RoundingMode.HALF_EVEN);
+
+    private static final int MAX_SCALE = 9;
+    // Below this a double holds every integer, and its fraction has room
+    // for the half
+    private static final double EXACT_LIMIT = 0x1p52;
+
+    private final int scale;
+    private final long unit;
+    private final RoundingMode rounding;
+
+    public Money(int scale, RoundingMode rounding) {
+        if (scale < 0 || scale > MAX_SCALE) {
+            throw new IllegalArgumentException("Money scale must be between 0 and " + MAX_SCALE);
+        }
+        this.scale = scale;
+        this.rounding = rounding;
+        long u = 1;
+        for (int i = 0; i < scale; i++) u *= 10;
+        this.unit = u;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    public RoundingMode getRounding() {
+        return rounding;
+    }
+
+    // "1234.567" -> 123457 cents with HALF_EVEN; digits beyond the scale are
+    // rounded, never lost. Other syntax such as exponents goes through
+    // BigDecimal. Invalid text throws NumberFormatException.
+    public long parse(CharSequence text) {
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+        if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        long units = 0;
+        int fractionDigits = 0;
+        int dropped = 0;
+        boolean droppedNonZero = false;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && !seenPoint) {
+                seenPoint = true;
+                continue;
+            }
+            if (c < '0' || c > '9') return parseSlow(text);
+            seenDigit = true;
+            if (seenPoint && fractionDigits == scale) {
+                // The first dropped digit decides the half; the rest only
+                // whether anything was dropped at all
+                if (dropped == 0) dropped = c - '0' + 1;
+                else if (c != '0') droppedNonZero = true;
+                continue;
+            }
+            if (units > (Long.MAX_VALUE - 9) / 10) return parseSlow(text);
+            units = units * 10 + (c - '0');
+            if (seenPoint) fractionDigits++;
+        }
+        if (!seenDigit) return parseSlow(text);
+        for (; fractionDigits < scale; fractionDigits++) {
+            units = Math.multiplyExact(units, 10);
+        }
+        if (dropped == 0) return negative ? -units : units;
+
+        int firstDropped = dropped - 1;
+        int half = firstDropped != 5 ? Integer.compare(firstDropped, 5) : (droppedNonZero ? 1 : 0);
+        boolean inexact = firstDropped != 0 || droppedNonZero;
+        if (!inexact) return negative ? -units : units;
+        long floor = negative ? -units - 1 : units;
+        // For negative values the floor is one further out and the
+        // comparison with the half flips
+        return round(floor, negative ? -half : half, negative);
+    }
+
+    // The amount nearest value by this context's rounding, as 12.345 -> 1234
+    // or 1235 cents
+    public long fromDouble(double value) {
+        return multiply(unit, value);
+    }
+
+    // Exact when the amount is below 2^53 units
+    public double toDouble(long amount) {
+        return (double) amount / unit;
+    }
+
+    public long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    public long subtract(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    public long multiply(long amount, long count) {
+        return Math.multiplyExact(amount, count);
+    }
+
+    // amount * factor, rounded; interest is multiply(balance, rate)
+    public long multiply(long amount, double factor) {
+        if (!Double.isFinite(factor)) throw new ArithmeticException("Not a finite number: " + factor);
+        double a = amount;
+        double product = a * factor;
+        if (Math.abs(amount) > 1L << 53 || !(Math.abs(product) < EXACT_LIMIT)) {
+            return multiplySlow(amount, factor);
+        }
+        // product + error is exactly amount * factor
+        double error = Math.fma(a, factor, -product);
+        double floorValue = Math.floor(product);
+        long floor = (long) floorValue;
+        double fraction = product - floorValue;
+        int half;
+        if (fraction == 0) {
+            if (error == 0) return floor;
+            if (error < 0) {
+                // Just below an integer
+                floor--;
+                half = 1;
+            } else {
+                half = -1;
+            }
+        } else if (fraction == 0.5) {
+            half = error > 0 ? 1 : error < 0 ? -1 : 0;
+        } else {
+            half = fraction > 0.5 ? 1 : -1;
+        }
+        return round(floor, half, product < 0 || (product == 0 && error < 0));
+    }
+
+    // amount / divisor, rounded; divide(total, 3) splits a bill
+    public long divide(long amount, long divisor) {
+        if (divisor == 0) throw new ArithmeticException("Division by zero");
+        if (divisor < 0) {
+            amount = Math.negateExact(amount);
+            divisor = -divisor;
+        }
+        long floor = Math.floorDiv(amount, divisor);
+        long remainder = Math.floorMod(amount, divisor);
+        if (remainder == 0) return floor;
+        return round(floor, Long.compare(remainder, divisor - remainder), amount < 0);
+    }
+
+    // "-1234.50" for -123450 cents
+    public String format(long amount) {
+        StringBuilder text = new StringBuilder(24);
+        if (amount < 0) text.append('-');
+        long whole = Math.abs(amount / unit);
+        long fraction = Math.abs(amount % unit);
+        text.append(whole);
+        if (scale > 0) {
+            text.append('.');
+            String digits = Long.toString(fraction);
+            for (int i = digits.length(); i < scale; i++) text.append('0');
+            text.append(digits);
+        }
+        return text.toString();
+    }
+
+    private long multiplySlow(long amount, double factor) {
+        try {
+            return new BigDecimal(amount).multiply(new BigDecimal(factor))
+                .setScale(0, rounding).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new ArithmeticException("Amount out of range: " + amount + " * " + factor);
+        }
+    }
+
+    // Chooses between floor and floor + 1 for an inexact value strictly
+    // between them; half compares the value's fraction with one half
+    private long round(long floor, int half, boolean negative) {
+        boolean up;
+        switch (rounding) {
+            case FLOOR:
+                up = false;
+                break;
+            case CEILING:
+                up = true;
+                break;
+            case DOWN:
+                up = negative;
+                break;
+            case UP:
+                up = !negative;
+                break;
+            case HALF_UP:
+                up = half > 0 || (half == 0 && !negative);
+                break;
+            case HALF_DOWN:
+                up = half > 0 || (half == 0 && negative);
+                break;
+            case HALF_EVEN:
+                up = half > 0 || (half == 0 && (floor & 1) != 0);
+                break;
+            default:
+                throw new ArithmeticException("Rounding necessary");
+        }
+        return up ? Math.addExact(floor, 1) : floor;
+    }
+
+    private long parseSlow(CharSequence text) {
+        try {
+            return new BigDecimal(text.toString()).setScale(scale, rounding).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new ArithmeticException("Amount out of range: " + text);
+        }
+    }
+}
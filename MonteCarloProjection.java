@@ -0,0 +1,109 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+
+// Monte Carlo projection of an investment: the distribution of final values
+// rather than calculateInvestment's single compounded figure.
+//
+// Each path grows monthly by a lognormal return (geometric Brownian motion)
+// with the given yearly expected return and volatility, and receives 1/12 of
+// the yearly contribution at the end of every month. The drift is chosen so
+// that the expected yearly growth is exactly 1 + rate; with zero volatility
+// and no contributions every path equals calculateInvestment.
+//
+// Paths are simulated in fixed-size chunks on a ForkJoinPool. Each chunk
+// draws from its own SplittableRandom, split off the seeded root in chunk
+// order, so a given seed gives the same outcomes on any number of threads.
+// A path's state is a single double, and the final values go into one
+// double[] that the percentiles are selected from.
+public final class MonteCarloProjection {
+    public static final int DEFAULT_PATHS = 100_000;
+    public static final int MAX_PATHS = 50_000_000;
+
+    private static final int STEPS_PER_YEAR = 12;
+    private static final int CHUNK_SIZE = 1 << 12;
+    private static final double[] PERCENTILES = {0.05, 0.25, 0.5, 0.75, 0.95};
+
+    private final double principal;
+    private final double rate;
+    private final double volatility;
+    private final double contribution;
+    private final int years;
+    private final ForkJoinPool pool;
+
+    // rate, volatility and contribution are yearly; rate and volatility as
+    // fractions (0.07 for 7%)
+    public MonteCarloProjection(double principal, double rate, double volatility, double contribution, int years) {
+        this(principal, rate, volatility, contribution, years, ForkJoinPool.commonPool());
+    }
+
+    public MonteCarloProjection(double principal, double rate, double volatility, double contribution, int years,
+                                ForkJoinPool pool) {
+        if (years < 0) throw new RuntimeException("Years cannot be negative");
+        if (!(volatility >= 0)) throw new RuntimeException("Volatility cannot be negative");
+        if (!(rate > -1)) throw new RuntimeException("Rate must be above -100%");
+        this.principal = principal;
+        this.rate = rate;
+        this.volatility = volatility;
+        this.contribution = contribution;
+        this.years = years;
+        this.pool = pool;
+    }
+
+    // The final value of each path
+    public double[] simulate(int paths, long seed) {
+        if (paths < 1 || paths > MAX_PATHS) {
+            throw new RuntimeException("Paths must be between 1 and " + MAX_PATHS);
+        }
+        int steps = years * STEPS_PER_YEAR;
+        double dt = 1.0 / STEPS_PER_YEAR;
+        double drift = (Math.log1p(rate) - 0.5 * volatility * volatility) * dt;
+        double diffusion = volatility * Math.sqrt(dt);
+        double deposit = contribution * dt;
+
+        int chunks = (paths + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[chunks];
+        for (int chunk = 0; chunk < chunks; chunk++) randoms[chunk] = root.split();
+
+        double[] outcomes = new double[paths];
+        IntConsumer body = chunk -> {
+            SplittableRandom random = randoms[chunk];
+            int end = Math.min(paths, (chunk + 1) * CHUNK_SIZE);
+            for (int path = chunk * CHUNK_SIZE; path < end; path++) {
+                if (deposit == 0) {
+                    // Without deposits only the sum of the log returns matters,
+                    // and a sum of normal draws is one normal draw
+                    outcomes[path] = principal * Math.exp(steps * drift + diffusion * Math.sqrt(steps)
+                                                                          * random.nextGaussian());
+                    continue;
+                }
+                double value = principal;
+                for (int step = 0; step < steps; step++) {
+                    value = value * Math.exp(drift + diffusion * random.nextGaussian()) + deposit;
+                }
+                outcomes[path] = value;
+            }
+        };
+        ChunkedTasks.forEachChunk(pool, chunks, body);
+        return outcomes;
+    }
+
+    public CalculationResult.Projection project(int paths, long seed) {
+        double[] outcomes = simulate(paths, seed);
+        StatisticsAccumulator stats = ParallelStatistics.common().accumulate(outcomes);
+        double invested = principal + contribution * years;
+        long losses = 0;
+        for (double outcome : outcomes) {
+            if (outcome < invested) losses++;
+        }
+        // Selection reorders outcomes, which are not needed in order anymore
+        double[] percentiles = new double[PERCENTILES.length];
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            percentiles[i] = Quantiles.percentileInPlace(outcomes, 0, paths, PERCENTILES[i]);
+        }
+        return new CalculationResult.Projection(paths, invested, stats.getMean(), stats.getStandardDeviation(),
+                                                percentiles[0], percentiles[1], percentiles[2],
+                                                percentiles[3], percentiles[4], (double) losses / paths);
+    }
+}
@@ -3,7 +3,6 @@ import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -40,6 +39,9 @@ public class MultiCalculatorSystem extends JFrame {
     private JComboBox<String> conversionTypeCombo, fromUnitCombo, toUnitCombo;
     private JTextField unitValueField;
     private JTextArea statsDataArea;
+    
+    // All calculations are delegated to the engine; this class only handles the UI
+    private final transient CalculatorEngine engine = new CalculatorEngine(256);
 
     public MultiCalculatorSystem() {
         calculationHistory = new ArrayList<>();
@@ -405,11 +407,11 @@ public class MultiCalculatorSystem extends JFrame {
         
         loanCalcBtn.addActionListener(e -> {
             try {
-                double principal = Double.parseDouble(loanAmountField.getText());
-                double rate = Double.parseDouble(interestRateField.getText()) / 100 / 12;
-                int months = (int)(Double.parseDouble(loanTermField.getText()) * 12);
+                double principal = NumberParser.parse(loanAmountField.getText());
+                double rate = NumberParser.parse(interestRateField.getText()) / 100 / 12;
+                int months = (int)(NumberParser.parse(loanTermField.getText()) * 12);
                 
-                String result = calculateLoanPayment(principal, rate, months);
+                String result = engine.calculateLoanPayment(principal, rate, months).toString();
                 String input = "loan " + principal + " " + (rate * 1200) + " " + (months / 12.0);
                 displayResult(input, result);
                 addToHistory(input, result);
@@ -420,11 +422,11 @@ public class MultiCalculatorSystem extends JFrame {
         
         investCalcBtn.addActionListener(e -> {
             try {
-                double principal = Double.parseDouble(investmentAmountField.getText());
-                double rate = Double.parseDouble(returnRateField.getText()) / 100;
+                double principal = NumberParser.parse(investmentAmountField.getText());
+                double rate = NumberParser.parse(returnRateField.getText()) / 100;
                 int years = Integer.parseInt(investmentYearsField.getText());
                 
-                String result = calculateInvestment(principal, rate, years);
+                String result = engine.calculateInvestment(principal, rate, years).toString();
                 String input = "investment " + principal + " " + (rate * 100) + " " + years;
                 displayResult(input, result);
                 addToHistory(input, result);
@@ -450,7 +452,7 @@ public class MultiCalculatorSystem extends JFrame {
         gbc.fill = GridBagConstraints.HORIZONTAL;
         
         // Conversion type selector
-        String[] conversionTypes = {"Length", "Weight", "Temperature", "Volume", "Area"};
+        String[] conversionTypes = UnitRegistry.standard().categories().toArray(new String[0]);
         conversionTypeCombo = new JComboBox<>(conversionTypes);
         conversionTypeCombo.setFont(new Font("Segoe UI", Font.PLAIN, 12));
         
@@ -464,7 +466,7 @@ public class MultiCalculatorSystem extends JFrame {
         gbc.gridx = 0; gbc.gridy = 2;
         panel.add(new JLabel("From:"), gbc);
         
-        fromUnitCombo = new JComboBox<>(new String[]{"Meter", "Foot", "Inch", "Kilometer", "Mile"});
+        fromUnitCombo = new JComboBox<>(UnitRegistry.standard().units("Length").toArray(new String[0]));
         fromUnitCombo.setFont(new Font("Segoe UI", Font.PLAIN, 12));
         gbc.gridx = 1; gbc.gridy = 2;
         panel.add(fromUnitCombo, gbc);
@@ -473,7 +475,7 @@ public class MultiCalculatorSystem extends JFrame {
         gbc.gridx = 0; gbc.gridy = 3;
         panel.add(new JLabel("To:"), gbc);
         
-        toUnitCombo = new JComboBox<>(new String[]{"Meter", "Foot", "Inch", "Kilometer", "Mile"});
+        toUnitCombo = new JComboBox<>(UnitRegistry.standard().units("Length").toArray(new String[0]));
         toUnitCombo.setFont(new Font("Segoe UI", Font.PLAIN, 12));
         gbc.gridx = 1; gbc.gridy = 3;
         panel.add(toUnitCombo, gbc);
@@ -498,7 +500,7 @@ public class MultiCalculatorSystem extends JFrame {
         // Add action listener for convert button
         convertBtn.addActionListener(e -> {
             try {
-                double value = Double.parseDouble(unitValueField.getText());
+                double value = NumberParser.parse(unitValueField.getText());
                 String fromUnit = (String) fromUnitCombo.getSelectedItem();
                 String toUnit = (String) toUnitCombo.getSelectedItem();
                 
@@ -515,26 +517,7 @@ public class MultiCalculatorSystem extends JFrame {
     
     private void updateUnitOptions() {
         String type = (String) conversionTypeCombo.getSelectedItem();
-        String[] units;
-        switch (type) {
-            case "Length":
-                units = new String[]{"Meter", "Foot", "Inch", "Kilometer", "Mile", "Yard", "Centimeter"};
-                break;
-            case "Weight":
-                units = new String[]{"Kilogram", "Pound", "Ounce", "Gram"};
-                break;
-            case "Temperature":
-                units = new String[]{"Celsius", "Fahrenheit", "Kelvin"};
-                break;
-            case "Volume":
-                units = new String[]{"Liter", "Gallon", "Milliliter", "Cubic Meter"};
-                break;
-            case "Area":
-                units = new String[]{"Square Meter", "Square Foot", "Acre", "Hectare"};
-                break;
-            default:
-                units = new String[]{"Meter", "Foot", "Inch", "Kilometer", "Mile"};
-        }
+        String[] units = UnitRegistry.standard().units(type).toArray(new String[0]);
         fromUnitCombo.setModel(new DefaultComboBoxModel<>(units));
         toUnitCombo.setModel(new DefaultComboBoxModel<>(units));
     }
@@ -582,7 +565,7 @@ public class MultiCalculatorSystem extends JFrame {
         meanBtn.addActionListener(e -> {
             try {
                 String input = "mean " + statsDataArea.getText();
-                String result = performStatisticalCalculation(input);
+                String result = engine.calculateStatistics(input).toString();
                 displayResult(input, result);
                 addToHistory(input, result);
             } catch (Exception ex) {
@@ -593,7 +576,7 @@ public class MultiCalculatorSystem extends JFrame {
         medianBtn.addActionListener(e -> {
             try {
                 String input = "median " + statsDataArea.getText();
-                String result = performStatisticalCalculation(input);
+                String result = engine.calculateStatistics(input).toString();
                 displayResult(input, result);
                 addToHistory(input, result);
             } catch (Exception ex) {
@@ -604,7 +587,7 @@ public class MultiCalculatorSystem extends JFrame {
         stdDevBtn.addActionListener(e -> {
             try {
                 String input = "stddev " + statsDataArea.getText();
-                String result = performStatisticalCalculation(input);
+                String result = engine.calculateStatistics(input).toString();
                 displayResult(input, result);
                 addToHistory(input, result);
             } catch (Exception ex) {
@@ -749,22 +732,22 @@ public class MultiCalculatorSystem extends JFrame {
             
             switch (selectedCalc) {
                 case "Basic Calculator":
-                    result = performBasicCalculation(input);
+                    result = engine.evaluateBasic(input).toString();
                     break;
                 case "Scientific Calculator":
-                    result = performScientificCalculation(input);
+                    result = engine.evaluateScientific(input).toString();
                     break;
                 case "Financial Calculator":
-                    result = performFinancialCalculation(input);
+                    result = engine.calculateFinancial(input).toString();
                     break;
                 case "Unit Converter":
                     result = performUnitConversion(input);
                     break;
                 case "Statistics Calculator":
-                    result = performStatisticalCalculation(input);
+                    result = engine.calculateStatistics(input).toString();
                     break;
                 default:
-                    result = performBasicCalculation(input);
+                    result = engine.evaluateBasic(input).toString();
             }
             
             displayResult(input, result);
@@ -775,359 +758,9 @@ public class MultiCalculatorSystem extends JFrame {
         }
     }
     
-    private String performBasicCalculation(String expression) {
-        try {
-            expression = expression.replaceAll("\\s", "");
-            double result = evaluateExpression(expression);
-            DecimalFormat df = new DecimalFormat("#.##########");
-            return df.format(result);
-        } catch (Exception e) {
-            throw new RuntimeException("Invalid expression: " + expression);
-        }
-    }
-    
-    private String performScientificCalculation(String expression) {
-        try {
-            expression = expression.toLowerCase().replaceAll("\\s", "");
-            
-            // Handle scientific functions
-            if (expression.startsWith("sin(") && expression.endsWith(")")) {
-                double value = Double.parseDouble(expression.substring(4, expression.length()-1));
-                return String.valueOf(Math.sin(Math.toRadians(value)));
-            } else if (expression.startsWith("cos(") && expression.endsWith(")")) {
-                double value = Double.parseDouble(expression.substring(4, expression.length()-1));
-                return String.valueOf(Math.cos(Math.toRadians(value)));
-            } else if (expression.startsWith("tan(") && expression.endsWith(")")) {
-                double value = Double.parseDouble(expression.substring(4, expression.length()-1));
-                return String.valueOf(Math.tan(Math.toRadians(value)));
-            } else if (expression.startsWith("sqrt(") && expression.endsWith(")")) {
-                double value = Double.parseDouble(expression.substring(5, expression.length()-1));
-                return String.valueOf(Math.sqrt(value));
-            } else if (expression.startsWith("log(") && expression.endsWith(")")) {
-                double value = Double.parseDouble(expression.substring(4, expression.length()-1));
-                return String.valueOf(Math.log10(value));
-            } else if (expression.startsWith("ln(") && expression.endsWith(")")) {
-                double value = Double.parseDouble(expression.substring(3, expression.length()-1));
-                return String.valueOf(Math.log(value));
-            } else if (expression.equals("pi") || expression.equals("π")) {
-                return String.valueOf(Math.PI);
-            } else if (expression.equals("e")) {
-                return String.valueOf(Math.E);
-            }
-            
-            // Fall back to basic calculation
-            return performBasicCalculation(expression);
-            
-        } catch (Exception e) {
-            throw new RuntimeException("Invalid scientific expression: " + expression);
-        }
-    }
-    
-    private String performFinancialCalculation(String input) {
-        String[] parts = input.toLowerCase().split("\\s+");
-        
-        try {
-            if (parts.length >= 4 && parts[0].equals("loan")) {
-                double principal = Double.parseDouble(parts[1]);
-                double rate = Double.parseDouble(parts[2]) / 100 / 12; // Monthly rate
-                int months = (int)(Double.parseDouble(parts[3]) * 12);
-                
-                return calculateLoanPayment(principal, rate, months);
-            }
-            
-            if (parts.length >= 4 && parts[0].equals("investment")) {
-                double principal = Double.parseDouble(parts[1]);
-                double rate = Double.parseDouble(parts[2]) / 100;
-                int years = Integer.parseInt(parts[3]);
-                
-                return calculateInvestment(principal, rate, years);
-            }
-            
-            throw new RuntimeException("Use format: 'loan amount rate years' or 'investment amount rate years'");
-        } catch (NumberFormatException e) {
-            throw new RuntimeException("Invalid number format in input: " + input);
-        }
-    }
-    
-    private String calculateLoanPayment(double principal, double monthlyRate, int months) {
-        double payment = principal * (monthlyRate * Math.pow(1 + monthlyRate, months)) / 
-                        (Math.pow(1 + monthlyRate, months) - 1);
-        
-        DecimalFormat df = new DecimalFormat("#.##");
-        return "Monthly Payment: $" + df.format(payment) + 
-               "\nTotal Interest: $" + df.format((payment * months) - principal);
-    }
-    
-    private String calculateInvestment(double principal, double rate, int years) {
-        double futureValue = principal * Math.pow(1 + rate, years);
-        DecimalFormat df = new DecimalFormat("#.##");
-        return "Future Value: $" + df.format(futureValue) + 
-               "\nTotal Gain: $" + df.format(futureValue - principal);
-    }
-    
     private String performUnitConversion(String input) {
-        String[] parts = input.toLowerCase().split("\\s+");
-        
-        try {
-            if (parts.length >= 4 && parts[2].equals("to")) {
-                double value = Double.parseDouble(parts[0]);
-                String fromUnit = parts[1];
-                String toUnit = parts[3];
-                
-                String conversionType = (String) conversionTypeCombo.getSelectedItem();
-                double result;
-                
-                switch (conversionType) {
-                    case "Length":
-                        double meters = convertToMeters(value, fromUnit);
-                        result = convertFromMeters(meters, toUnit);
-                        break;
-                    case "Weight":
-                        double kilograms = convertToKilograms(value, fromUnit);
-                        result = convertFromKilograms(kilograms, toUnit);
-                        break;
-                    case "Temperature":
-                        result = convertTemperature(value, fromUnit, toUnit);
-                        break;
-                    case "Volume":
-                        double liters = convertToLiters(value, fromUnit);
-                        result = convertFromLiters(liters, toUnit);
-                        break;
-                    case "Area":
-                        double squareMeters = convertToSquareMeters(value, fromUnit);
-                        result = convertFromSquareMeters(squareMeters, toUnit);
-                        break;
-                    default:
-                        throw new RuntimeException("Invalid conversion type");
-                }
-                
-                DecimalFormat df = new DecimalFormat("#.##########");
-                return value + " " + fromUnit + " = " + df.format(result) + " " + toUnit;
-            }
-            
-            throw new RuntimeException("Use format: 'value fromUnit to toUnit' (e.g., '10 meter to foot')");
-        } catch (NumberFormatException e) {
-            throw new RuntimeException("Invalid number format in input: " + input);
-        }
-    }
-    
-    private double convertToMeters(double value, String unit) {
-        switch (unit.toLowerCase()) {
-            case "meter": case "m": return value;
-            case "foot": case "ft": return value * 0.3048;
-            case "inch": case "in": return value * 0.0254;
-            case "kilometer": case "km": return value * 1000;
-            case "mile": case "mi": return value * 1609.34;
-            case "yard": case "yd": return value * 0.9144;
-            case "centimeter": case "cm": return value * 0.01;
-            default: throw new RuntimeException("Unknown length unit: " + unit);
-        }
-    }
-    
-    private double convertFromMeters(double meters, String unit) {
-        switch (unit.toLowerCase()) {
-            case "meter": case "m": return meters;
-            case "foot": case "ft": return meters / 0.3048;
-            case "inch": case "in": return meters / 0.0254;
-            case "kilometer": case "km": return meters / 1000;
-            case "mile": case "mi": return meters / 1609.34;
-            case "yard": case "yd": return meters / 0.9144;
-            case "centimeter": case "cm": return meters / 0.01;
-            default: throw new RuntimeException("Unknown length unit: " + unit);
-        }
-    }
-    
-    private double convertToKilograms(double value, String unit) {
-        switch (unit.toLowerCase()) {
-            case "kilogram": case "kg": return value;
-            case "pound": case "lb": return value * 0.453592;
-            case "ounce": case "oz": return value * 0.0283495;
-            case "gram": case "g": return value * 0.001;
-            default: throw new RuntimeException("Unknown weight unit: " + unit);
-        }
-    }
-    
-    private double convertFromKilograms(double kilograms, String unit) {
-        switch (unit.toLowerCase()) {
-            case "kilogram": case "kg": return kilograms;
-            case "pound": case "lb": return kilograms / 0.453592;
-            case "ounce": case "oz": return kilograms / 0.0283495;
-            case "gram": case "g": return kilograms / 0.001;
-            default: throw new RuntimeException("Unknown weight unit: " + unit);
-        }
-    }
-    
-    private double convertTemperature(double value, String fromUnit, String toUnit) {
-        if (fromUnit.equalsIgnoreCase("celsius")) {
-            if (toUnit.equalsIgnoreCase("fahrenheit")) return (value * 9/5) + 32;
-            if (toUnit.equalsIgnoreCase("kelvin")) return value + 273.15;
-            if (toUnit.equalsIgnoreCase("celsius")) return value;
-        } else if (fromUnit.equalsIgnoreCase("fahrenheit")) {
-            if (toUnit.equalsIgnoreCase("celsius")) return (value - 32) * 5/9;
-            if (toUnit.equalsIgnoreCase("kelvin")) return (value - 32) * 5/9 + 273.15;
-            if (toUnit.equalsIgnoreCase("fahrenheit")) return value;
-        } else if (fromUnit.equalsIgnoreCase("kelvin")) {
-            if (toUnit.equalsIgnoreCase("celsius")) return value - 273.15;
-            if (toUnit.equalsIgnoreCase("fahrenheit")) return (value - 273.15) * 9/5 + 32;
-            if (toUnit.equalsIgnoreCase("kelvin")) return value;
-        }
-        throw new RuntimeException("Unknown temperature unit: " + fromUnit + " or " + toUnit);
-    }
-    
-    private double convertToLiters(double value, String unit) {
-        switch (unit.toLowerCase()) {
-            case "liter": case "l": return value;
-            case "gallon": case "gal": return value * 3.78541;
-            case "milliliter": case "ml": return value * 0.001;
-            case "cubic meter": case "m3": return value * 1000;
-            default: throw new RuntimeException("Unknown volume unit: " + unit);
-        }
-    }
-    
-    private double convertFromLiters(double liters, String unit) {
-        switch (unit.toLowerCase()) {
-            case "liter": case "l": return liters;
-            case "gallon": case "gal": return liters / 3.78541;
-            case "milliliter": case "ml": return liters / 0.001;
-            case "cubic meter": case "m3": return liters / 1000;
-            default: throw new RuntimeException("Unknown volume unit: " + unit);
-        }
-    }
-    
-    private double convertToSquareMeters(double value, String unit) {
-        switch (unit.toLowerCase()) {
-            case "square meter": case "m2": return value;
-            case "square foot": case "ft2": return value * 0.092903;
-            case "acre": return value * 4046.86;
-            case "hectare": return value * 10000;
-            default: throw new RuntimeException("Unknown area unit: " + unit);
-        }
-    }
-    
-    private double convertFromSquareMeters(double squareMeters, String unit) {
-        switch (unit.toLowerCase()) {
-            case "square meter": case "m2": return squareMeters;
-            case "square foot": case "ft2": return squareMeters / 0.092903;
-            case "acre": return squareMeters / 4046.86;
-            case "hectare": return squareMeters / 10000;
-            default: throw new RuntimeException("Unknown area unit: " + unit);
-        }
-    }
-    
-    private String performStatisticalCalculation(String input) {
-        String[] parts = input.toLowerCase().split("\\s+");
-        
-        if (parts[0].equals("mean") || parts[0].equals("average")) {
-            double[] numbers = parseNumberList(input.substring(parts[0].length()).trim());
-            double sum = 0;
-            for (double num : numbers) sum += num;
-            DecimalFormat df = new DecimalFormat("#.##########");
-            return "Mean: " + df.format(sum / numbers.length);
-        }
-        
-        if (parts[0].equals("median")) {
-            double[] numbers = parseNumberList(input.substring(parts[0].length()).trim());
-            java.util.Arrays.sort(numbers);
-            double median;
-            if (numbers.length % 2 == 0) {
-                median = (numbers[numbers.length/2 - 1] + numbers[numbers.length/2]) / 2;
-            } else {
-                median = numbers[numbers.length/2];
-            }
-            DecimalFormat df = new DecimalFormat("#.##########");
-            return "Median: " + df.format(median);
-        }
-        
-        if (parts[0].equals("stddev") || parts[0].equals("stdev")) {
-            double[] numbers = parseNumberList(input.substring(parts[0].length()).trim());
-            double mean = 0;
-            for (double num : numbers) mean += num;
-            mean /= numbers.length;
-            
-            double variance = 0;
-            for (double num : numbers) {
-                variance += Math.pow(num - mean, 2);
-            }
-            variance /= numbers.length;
-            
-            DecimalFormat df = new DecimalFormat("#.##########");
-            return "Standard Deviation: " + df.format(Math.sqrt(variance));
-        }
-        
-        // Default: assume it's a list of numbers to analyze
-        double[] numbers = parseNumberList(input);
-        return analyzeNumbers(numbers);
-    }
-    
-    private double[] parseNumberList(String input) {
-        String[] parts = input.replaceAll("[,;]", " ").trim().split("\\s+");
-        List<Double> numbers = new ArrayList<>();
-        
-        for (String part : parts) {
-            try {
-                numbers.add(Double.parseDouble(part));
-            } catch (NumberFormatException e) {
-                // Skip non-numeric parts
-            }
-        }
-        
-        if (numbers.isEmpty()) {
-            throw new RuntimeException("No valid numbers found in input");
-        }
-        
-        return numbers.stream().mapToDouble(Double::doubleValue).toArray();
-    }
-    
-    private String analyzeNumbers(double[] numbers) {
-        DecimalFormat df = new DecimalFormat("#.##########");
-        
-        // Calculate mean
-        double sum = 0;
-        for (double num : numbers) sum += num;
-        double mean = numbers.length > 0 ? sum / numbers.length : 0;
-        
-        // Calculate median
-        double[] sorted = numbers.clone();
-        java.util.Arrays.sort(sorted);
-        double median;
-        if (sorted.length % 2 == 0 && sorted.length > 0) {
-            median = (sorted[sorted.length/2 - 1] + sorted[sorted.length/2]) / 2;
-        } else if (sorted.length > 0) {
-            median = sorted[sorted.length/2];
-        } else {
-            median = 0;
-        }
-        
-        // Calculate standard deviation
-        double variance = 0;
-        if (numbers.length > 0) {
-            for (double num : numbers) {
-                variance += Math.pow(num - mean, 2);
-            }
-            variance /= numbers.length;
-        }
-        double stdDev = Math.sqrt(variance);
-        
-        // Find min and max
-        double min = sorted.length > 0 ? sorted[0] : 0;
-        double max = sorted.length > 0 ? sorted[sorted.length - 1] : 0;
-        
-        StringBuilder result = new StringBuilder();
-        result.append("Statistical Analysis:\n");
-        result.append("Count: ").append(numbers.length).append("\n");
-        result.append("Mean: ").append(df.format(mean)).append("\n");
-        result.append("Median: ").append(df.format(median)).append("\n");
-        result.append("Standard Deviation: ").append(df.format(stdDev)).append("\n");
-        result.append("Minimum: ").append(df.format(min)).append("\n");
-        result.append("Maximum: ").append(df.format(max)).append("\n");
-        result.append("Range: ").append(df.format(max - min));
-        
-        return result.toString();
-    }
-    
-    // Simple expression evaluator for basic arithmetic
-    private double evaluateExpression(String expression) {
-        return new ExpressionEvaluator().evaluate(expression);
+        String conversionType = (String) conversionTypeCombo.getSelectedItem();
+        return engine.convertUnits(input, conversionType).toString();
     }
     
     private void displayResult(String input, String result) {
@@ -1191,7 +824,18 @@ public class MultiCalculatorSystem extends JFrame {
         inputField.requestFocus();
     }
     
-    public static void main(String[] args) {
+    public static void main(String[] args) throws java.io.IOException {
+        // "--batch [options] [files]" runs the headless line-by-line calculator instead of the GUI
+        if (args.length > 0 && args[0].equals("--batch")) {
+            BatchCalculator.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        // "--serve [--port N] [--host ADDRESS]" starts the local HTTP/JSON service
+        if (args.length > 0 && args[0].equals("--serve")) {
+            CalculatorHttpServer.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        
         SwingUtilities.invokeLater(() -> {
             try {
                 UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -1201,74 +845,4 @@ public class MultiCalculatorSystem extends JFrame {
             new MultiCalculatorSystem().setVisible(true);
         });
     }
-}
-
-
-class ExpressionEvaluator {
-    private int pos = -1;
-    private int ch;
-    private String expression;
-    
-    public double evaluate(String expression) {
-        this.expression = expression.replaceAll("\\s", "");
-        this.pos = -1;
-        nextChar();
-        double result = parseExpression();
-        if (pos < this.expression.length()) {
-            throw new RuntimeException("Unexpected character: " + (char)ch);
-        }
-        return result;
-    }
-    
-    private void nextChar() {
-        ch = (++pos < expression.length()) ? expression.charAt(pos) : -1;
-    }
-    
-    private boolean eat(int charToEat) {
-        while (ch == ' ') nextChar();
-        if (ch == charToEat) {
-            nextChar();
-            return true;
-        }
-        return false;
-    }
-    
-    private double parseExpression() {
-        double x = parseTerm();
-        for (;;) {
-            if (eat('+')) x += parseTerm();
-            else if (eat('-')) x -= parseTerm();
-            else return x;
-        }
-    }
-    
-    private double parseTerm() {
-        double x = parseFactor();
-        for (;;) {
-            if (eat('*')) x *= parseFactor();
-            else if (eat('/')) x /= parseFactor();
-            else return x;
-        }
-    }
-    
-    private double parseFactor() {
-        if (eat('+')) return parseFactor();
-        if (eat('-')) return -parseFactor();
-        
-        double x;
-        int startPos = this.pos;
-        if (eat('(')) {
-            x = parseExpression();
-            eat(')');
-        } else if ((ch >= '0' && ch <= '9') || ch == '.') {
-            while ((ch >= '0' && ch <= '9') || ch == '.') nextChar();
-            x = Double.parseDouble(expression.substring(startPos, this.pos));
-        } else {
-            throw new RuntimeException("Unexpected: " + (char)ch);
-        }
-        
-        if (eat('^')) x = Math.pow(x, parseFactor());
-        
-        return x;
-    }
 }
\ No newline at end of file
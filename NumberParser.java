@@ -0,0 +1,284 @@
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Decimal-to-double conversion shared by every input path: expressions,
+// number lists, financial and unit inputs, JSON and mapped files. It reads
+// a range of a CharSequence or ByteBuffer in place, without substrings, and
+// gives the same correctly rounded result as Double.parseDouble.
+//
+// Up to 19 significant digits are gathered into a long. Small cases are
+// exact in one double multiplication or division (Clinger's fast path). The
+// rest go through the Eisel-Lemire algorithm, which multiplies by a 128-bit
+// approximation of the power of ten and needs no big-number arithmetic.
+// (See Lemire, "Number Parsing at a Gigabyte per Second", 2021.)
+//
+// Text outside the plain decimal syntax [+-]digits[.digits][e[+-]digits],
+// such as "NaN", "Infinity", hex floats, a trailing 'd' or surrounding
+// spaces, is handed to Double.parseDouble, so it is accepted or rejected
+// exactly as before. Invalid text throws NumberFormatException. Input with
+// more than 19 significant digits that falls too close to a rounding
+// boundary for the truncated digits to decide is also handed to
+// Double.parseDouble, so it still parses correctly, only more slowly.
+final class NumberParser {
+    private static final int SMALLEST_POWER_OF_TEN = -342;
+    private static final int LARGEST_POWER_OF_TEN = 308;
+    private static final long INFINITY_BITS = 0x7FF0000000000000L;
+    private static final int MAX_DIGITS = 19;
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // 128-bit truncated (rounded up for negative exponents) powers of five,
+    // normalized so the top bit is set; high word first. Same table as the
+    // reference fast_float implementation.
+    private static final long[] POWERS_OF_FIVE = powersOfFive();
+
+    private NumberParser() {
+    }
+
+    static double parse(CharSequence text) {
+        return parse(text, 0, text.length());
+    }
+
+    static double parse(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean truncated = false;
+        boolean seenDigit = false;
+
+        char c;
+        while (i < end && (c = text.charAt(i)) >= '0' && c <= '9') {
+            seenDigit = true;
+            if (digits < MAX_DIGITS) {
+                if (mantissa != 0 || c != '0') {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                }
+            } else {
+                exponent++;
+                if (c != '0') truncated = true;
+            }
+            i++;
+        }
+        if (i < end && text.charAt(i) == '.') {
+            i++;
+            while (i < end && (c = text.charAt(i)) >= '0' && c <= '9') {
+                seenDigit = true;
+                if (digits < MAX_DIGITS) {
+                    if (mantissa != 0 || c != '0') {
+                        mantissa = mantissa * 10 + (c - '0');
+                        digits++;
+                    }
+                    exponent--;
+                } else if (c != '0') {
+                    truncated = true;
+                }
+                i++;
+            }
+        }
+        if (!seenDigit) return parseSlow(text, start, end);
+
+        if (i < end && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+                negativeExponent = text.charAt(i) == '-';
+                i++;
+            }
+            int exponentStart = i;
+            int explicit = 0;
+            while (i < end && (c = text.charAt(i)) >= '0' && c <= '9') {
+                // Anything past this is zero or infinity anyway
+                if (explicit < 100_000) explicit = explicit * 10 + (c - '0');
+                i++;
+            }
+            if (i == exponentStart) return parseSlow(text, start, end);
+            exponent += negativeExponent ? -explicit : explicit;
+        }
+        if (i != end) return parseSlow(text, start, end);
+
+        long bits = toBits(mantissa, exponent, truncated);
+        if (bits < 0) return parseSlow(text, start, end);
+        double value = Double.longBitsToDouble(bits);
+        return negative ? -value : value;
+    }
+
+    // The same, for bytes in ASCII or any ASCII-compatible encoding
+    static double parse(ByteBuffer bytes, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes.get(i) == '-' || bytes.get(i) == '+')) {
+            negative = bytes.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean truncated = false;
+        boolean seenDigit = false;
+
+        byte c;
+        while (i < end && (c = bytes.get(i)) >= '0' && c <= '9') {
+            seenDigit = true;
+            if (digits < MAX_DIGITS) {
+                if (mantissa != 0 || c != '0') {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                }
+            } else {
+                exponent++;
+                if (c != '0') truncated = true;
+            }
+            i++;
+        }
+        if (i < end && bytes.get(i) == '.') {
+            i++;
+            while (i < end && (c = bytes.get(i)) >= '0' && c <= '9') {
+                seenDigit = true;
+                if (digits < MAX_DIGITS) {
+                    if (mantissa != 0 || c != '0') {
+                        mantissa = mantissa * 10 + (c - '0');
+                        digits++;
+                    }
+                    exponent--;
+                } else if (c != '0') {
+                    truncated = true;
+                }
+                i++;
+            }
+        }
+        if (!seenDigit) return parseSlow(bytes, start, end);
+
+        if (i < end && (bytes.get(i) == 'e' || bytes.get(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (bytes.get(i) == '-' || bytes.get(i) == '+')) {
+                negativeExponent = bytes.get(i) == '-';
+                i++;
+            }
+            int exponentStart = i;
+            int explicit = 0;
+            while (i < end && (c = bytes.get(i)) >= '0' && c <= '9') {
+                if (explicit < 100_000) explicit = explicit * 10 + (c - '0');
+                i++;
+            }
+            if (i == exponentStart) return parseSlow(bytes, start, end);
+            exponent += negativeExponent ? -explicit : explicit;
+        }
+        if (i != end) return parseSlow(bytes, start, end);
+
+        long bits = toBits(mantissa, exponent, truncated);
+        if (bits < 0) return parseSlow(bytes, start, end);
+        double value = Double.longBitsToDouble(bits);
+        return negative ? -value : value;
+    }
+
+    // Bits of the positive double nearest to mantissa * 10^exponent, or -1
+    // if that cannot be decided from the leading 19 digits. The mantissa is
+    // unsigned.
+    private static long toBits(long mantissa, int exponent, boolean truncated) {
+        if (mantissa == 0) return 0;
+        if (!truncated && exponent >= -22 && exponent <= 22 && mantissa >= 0 && mantissa <= 1L << 53) {
+            double value = (double) mantissa;
+            value = exponent < 0 ? value / POWERS_OF_TEN[-exponent] : value * POWERS_OF_TEN[exponent];
+            return Double.doubleToRawLongBits(value);
+        }
+        long bits = eiselLemire(mantissa, exponent);
+        // Digits were dropped: the true value lies between mantissa and
+        // mantissa + 1, and only counts if both ends round the same way
+        if (truncated && bits != eiselLemire(mantissa + 1, exponent)) return -1;
+        return bits;
+    }
+
+    private static long eiselLemire(long w, int q) {
+        if (q < SMALLEST_POWER_OF_TEN) return 0;
+        if (q > LARGEST_POWER_OF_TEN) return INFINITY_BITS;
+
+        int leadingZeros = Long.numberOfLeadingZeros(w);
+        w <<= leadingZeros;
+        int index = 2 * (q - SMALLEST_POWER_OF_TEN);
+        long high = Math.unsignedMultiplyHigh(w, POWERS_OF_FIVE[index]);
+        long low = w * POWERS_OF_FIVE[index];
+        // 55 bits are needed; when the lower bits are all ones the next word
+        // of the power might carry into them
+        long precisionMask = 0xFFFFFFFFFFFFFFFFL >>> 55;
+        if ((high & precisionMask) == precisionMask) {
+            long secondHigh = Math.unsignedMultiplyHigh(w, POWERS_OF_FIVE[index + 1]);
+            low += secondHigh;
+            if (Long.compareUnsigned(secondHigh, low) > 0) high++;
+        }
+
+        int upperBit = (int) (high >>> 63);
+        long mantissa = high >>> (upperBit + 9);
+        // floor(log2(10^q)) + 63, plus the exponent bias
+        int power2 = (((152170 + 65536) * q) >> 16) + 63 + upperBit - leadingZeros + 1023;
+
+        if (power2 <= 0) {
+            // Subnormal
+            if (-power2 + 1 >= 64) return 0;
+            mantissa >>>= -power2 + 1;
+            mantissa += mantissa & 1;
+            mantissa >>>= 1;
+            power2 = mantissa < 1L << 52 ? 0 : 1;
+            return mantissa | (long) power2 << 52;
+        }
+
+        // Exactly halfway between two doubles: round to even, not up
+        if (Long.compareUnsigned(low, 1) <= 0 && q >= -4 && q <= 23 && (mantissa & 3) == 1
+            && mantissa << (upperBit + 9) == high) {
+            mantissa &= ~1L;
+        }
+        mantissa += mantissa & 1;
+        mantissa >>>= 1;
+        if (mantissa >= 2L << 52) {
+            mantissa = 1L << 52;
+            power2++;
+        }
+        mantissa &= ~(1L << 52);
+        if (power2 >= 0x7FF) return INFINITY_BITS;
+        return mantissa | (long) power2 << 52;
+    }
+
+    private static double parseSlow(CharSequence text, int start, int end) {
+        return Double.parseDouble(text.subSequence(start, end).toString());
+    }
+
+    private static double parseSlow(ByteBuffer bytes, int start, int end) {
+        byte[] token = new byte[end - start];
+        bytes.get(start, token);
+        return Double.parseDouble(new String(token, StandardCharsets.ISO_8859_1));
+    }
+
+    private static long[] powersOfFive() {
+        long[] table = new long[2 * (LARGEST_POWER_OF_TEN - SMALLEST_POWER_OF_TEN + 1)];
+        BigInteger five = BigInteger.valueOf(5);
+        for (int q = SMALLEST_POWER_OF_TEN; q <= LARGEST_POWER_OF_TEN; q++) {
+            BigInteger power;
+            if (q >= 0) {
+                power = five.pow(q);
+                power = power.bitLength() < 128 ? power.shiftLeft(128 - power.bitLength())
+                                                 : power.shiftRight(power.bitLength() - 128);
+            } else {
+                BigInteger divisor = five.pow(-q);
+                int z = divisor.bitLength();
+                int b = q >= -27 ? z + 127 : 2 * z + 128;
+                power = BigInteger.ONE.shiftLeft(b).divide(divisor).add(BigInteger.ONE);
+                if (power.bitLength() > 128) power = power.shiftRight(power.bitLength() - 128);
+            }
+            int index = 2 * (q - SMALLEST_POWER_OF_TEN);
+            table[index] = power.shiftRight(64).longValue();
+            table[index + 1] = power.longValue();
+        }
+        return table;
+    }
+}
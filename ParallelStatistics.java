@@ -0,0 +1,166 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+// Statistics over large double[] arrays on every core. The array is cut
+// into fixed-size chunks that a ForkJoinPool processes independently.
+//
+// Moments and min/max come from one StatisticsAccumulator per chunk, merged
+// in chunk order. Because the chunks do not depend on the number of threads,
+// the result is the same on every machine.
+//
+// Exact percentiles use sample-based selection. A random sample brackets the
+// wanted rank between two values; one parallel pass counts the values below
+// and inside the bracket; a second pass copies the few inside values out;
+// and only that small array is searched with quickselect. If the bracket
+// misses, which a wide margin makes very unlikely, it falls back to a
+// sequential quickselect. Answers always match Quantiles exactly.
+public final class ParallelStatistics {
+    // Arrays smaller than this are handled on the calling thread
+    public static final int PARALLEL_THRESHOLD = 1 << 18;
+
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int SAMPLE_SIZE = 1 << 17;
+
+    private static final ParallelStatistics COMMON = new ParallelStatistics(ForkJoinPool.commonPool());
+
+    private final ForkJoinPool pool;
+
+    public ParallelStatistics(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public static ParallelStatistics common() {
+        return COMMON;
+    }
+
+    public StatisticsAccumulator accumulate(double[] values) {
+        if (values.length < PARALLEL_THRESHOLD) {
+            StatisticsAccumulator stats = new StatisticsAccumulator();
+            stats.addAll(values);
+            return stats;
+        }
+        StatisticsAccumulator[] partials = new StatisticsAccumulator[chunkCount(values.length)];
+        ChunkedTasks.forEachChunk(pool, partials.length, chunk -> {
+            StatisticsAccumulator partial = new StatisticsAccumulator();
+            partial.addAll(values, chunkStart(chunk), chunkLength(chunk, values.length));
+            partials[chunk] = partial;
+        });
+        StatisticsAccumulator stats = new StatisticsAccumulator();
+        for (StatisticsAccumulator partial : partials) stats.merge(partial);
+        return stats;
+    }
+
+    public double median(double[] values) {
+        return percentile(values, 0.5);
+    }
+
+    // p is a fraction between 0 and 1; values is left unchanged
+    public double percentile(double[] values, double p) {
+        if (!(p >= 0 && p <= 1)) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        }
+        int n = values.length;
+        if (n < PARALLEL_THRESHOLD) return Quantiles.percentile(values, p);
+
+        double position = p * (n - 1);
+        int lower = (int) Math.floor(position);
+        double fraction = position - Math.floor(position);
+        // The ranks that have to be found: lower, and lower + 1 to interpolate
+        int last = fraction == 0 ? lower : lower + 1;
+
+        // Bracket the ranks with sample values about six standard deviations
+        // of the sample rank on either side
+        double[] sample = sample(values);
+        if (sample.length == 0) return Double.NaN;
+        int target = (int) ((double) lower * sample.length / n);
+        int margin = 3 * (int) Math.sqrt(sample.length) + 1;
+        double lo = target - margin <= 0 ? Double.NEGATIVE_INFINITY : sample[target - margin];
+        double hi = target + margin >= sample.length - 1 ? Double.POSITIVE_INFINITY : sample[target + margin];
+
+        // Per chunk: values below lo, values in [lo, hi], NaNs
+        int chunks = chunkCount(n);
+        int[] below = new int[chunks];
+        int[] inside = new int[chunks];
+        int[] nans = new int[chunks];
+        ChunkedTasks.forEachChunk(pool, chunks, chunk -> {
+            int start = chunkStart(chunk);
+            int end = start + chunkLength(chunk, n);
+            int b = 0, in = 0, nan = 0;
+            for (int i = start; i < end; i++) {
+                double v = values[i];
+                if (v < lo) b++;
+                else if (v <= hi) in++;
+                else if (v != v) nan++;
+            }
+            below[chunk] = b;
+            inside[chunk] = in;
+            nans[chunk] = nan;
+        });
+        long belowTotal = 0, nanTotal = 0;
+        int[] offsets = new int[chunks + 1];
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            belowTotal += below[chunk];
+            nanTotal += nans[chunk];
+            offsets[chunk + 1] = offsets[chunk] + inside[chunk];
+        }
+        // NaNs rank after every number, as in Quantiles
+        if (last >= n - nanTotal) return Double.NaN;
+        if (lower < belowTotal || last >= belowTotal + offsets[chunks]) {
+            return Quantiles.percentile(values, p);
+        }
+
+        double[] bracket = new double[offsets[chunks]];
+        ChunkedTasks.forEachChunk(pool, chunks, chunk -> {
+            int start = chunkStart(chunk);
+            int end = start + chunkLength(chunk, n);
+            int out = offsets[chunk];
+            for (int i = start; i < end; i++) {
+                double v = values[i];
+                if (v >= lo && v <= hi) bracket[out++] = v;
+            }
+        });
+
+        int rank = (int) (lower - belowTotal);
+        double low = Quantiles.select(bracket, 0, bracket.length, rank);
+        if (fraction == 0) return low;
+        double high = Quantiles.select(bracket, rank + 1, bracket.length, rank + 1);
+        return fraction == 0.5 ? (low + high) / 2 : low + (high - low) * fraction;
+    }
+
+    // Same result as CalculatorEngine.analyzeNumbers, computed in parallel
+    public CalculationResult.Statistics analyze(double[] values) {
+        StatisticsAccumulator stats = accumulate(values);
+        double median = values.length > 0 ? median(values) : 0;
+        return new CalculationResult.Statistics(values.length, stats.getMean(), median,
+                                                stats.getStandardDeviation(),
+                                                stats.getMinimum(), stats.getMaximum());
+    }
+
+    // A sorted random sample of the non-NaN values; seeded by the length so
+    // runs are reproducible
+    private static double[] sample(double[] values) {
+        SplittableRandom random = new SplittableRandom(values.length);
+        double[] sample = new double[Math.min(SAMPLE_SIZE, values.length)];
+        int size = 0;
+        for (int i = 0; i < sample.length; i++) {
+            double v = values[random.nextInt(values.length)];
+            if (v == v) sample[size++] = v;
+        }
+        sample = Arrays.copyOf(sample, size);
+        Arrays.sort(sample);
+        return sample;
+    }
+
+    private static int chunkCount(int length) {
+        return (length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    private static int chunkStart(int chunk) {
+        return chunk * CHUNK_SIZE;
+    }
+
+    private static int chunkLength(int chunk, int length) {
+        return Math.min(CHUNK_SIZE, length - chunk * CHUNK_SIZE);
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.concurrent.ForkJoinPool;
+
+// Prices whole portfolios of loans or investments held as parallel columns
+// (struct of arrays): principal[i], rate[i] and term[i] describe instrument
+// i, and the results go into caller-supplied output columns at the same
+// index. Nothing is parsed, formatted or boxed per instrument.
+//
+// The formulas are those of CalculatorEngine.calculateLoanPayment and
+// calculateInvestment, so each row matches pricing that instrument on its
+// own. Large portfolios are cut into fixed-size chunks priced on a
+// ForkJoinPool; every row is independent, so the results do not depend on
+// the number of threads.
+public final class PortfolioPricer {
+    // Portfolios smaller than this are priced on the calling thread
+    public static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    private static final int CHUNK_SIZE = 1 << 12;
+
+    private static final PortfolioPricer COMMON = new PortfolioPricer(ForkJoinPool.commonPool());
+
+    private final ForkJoinPool pool;
+
+    public PortfolioPricer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public static PortfolioPricer common() {
+        return COMMON;
+    }
+
+    // Loans with monthly rates and terms in months: the monthly payment and
+    // the total interest over the term. totalInterest may be null.
+    public void priceLoans(double[] principal, double[] monthlyRate, double[] months,
+                           double[] payment, double[] totalInterest) {
+        int n = checkColumns(principal, monthlyRate, months, payment, totalInterest);
+        forEachRange(n, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                double p = AmortizationSchedule.monthlyPayment(principal[i], monthlyRate[i], months[i]);
+                payment[i] = p;
+                if (totalInterest != null) totalInterest[i] = p * months[i] - principal[i];
+            }
+        });
+    }
+
+    // Investments with yearly rates and terms in years: the future value
+    // with yearly compounding and the gain over the principal. gain may be
+    // null.
+    public void priceInvestments(double[] principal, double[] rate, double[] years,
+                                 double[] futureValue, double[] gain) {
+        int n = checkColumns(principal, rate, years, futureValue, gain);
+        forEachRange(n, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                double value = principal[i] * Math.pow(1 + rate[i], years[i]);
+                futureValue[i] = value;
+                if (gain != null) gain[i] = value - principal[i];
+            }
+        });
+    }
+
+    // The same in units of money: payments rounded once and total interest
+    // summed exactly from the rounded monthly interest, as in
+    // CalculatorEngine's money mode. totalInterest may be null.
+    public void priceLoans(Money money, long[] principal, double[] monthlyRate, int[] months,
+                           long[] payment, long[] totalInterest) {
+        int n = principal.length;
+        if (monthlyRate.length != n || months.length != n || payment.length != n
+            || (totalInterest != null && totalInterest.length != n)) {
+            throw new IllegalArgumentException("Portfolio columns must all have the same length");
+        }
+        forEachRange(n, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                long p = AmortizationSchedule.monthlyPayment(money, principal[i], monthlyRate[i], months[i]);
+                payment[i] = p;
+                if (totalInterest != null) {
+                    totalInterest[i] = AmortizationSchedule.totalInterest(money, principal[i], monthlyRate[i],
+                                                                          months[i], p);
+                }
+            }
+        });
+    }
+
+    public void priceInvestments(Money money, long[] principal, double[] rate, double[] years,
+                                 long[] futureValue, long[] gain) {
+        int n = principal.length;
+        if (rate.length != n || years.length != n || futureValue.length != n || (gain != null && gain.length != n)) {
+            throw new IllegalArgumentException("Portfolio columns must all have the same length");
+        }
+        forEachRange(n, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                long value = money.multiply(principal[i], Math.pow(1 + rate[i], years[i]));
+                futureValue[i] = value;
+                if (gain != null) gain[i] = money.subtract(value, principal[i]);
+            }
+        });
+    }
+
+    private static int checkColumns(double[] principal, double[] rate, double[] term,
+                                    double[] result, double[] extra) {
+        int n = principal.length;
+        if (rate.length != n || term.length != n || result.length != n || (extra != null && extra.length != n)) {
+            throw new IllegalArgumentException("Portfolio columns must all have the same length");
+        }
+        return n;
+    }
+
+    private void forEachRange(int length, RangeBody body) {
+        if (length < PARALLEL_THRESHOLD) {
+            body.run(0, length);
+            return;
+        }
+        ChunkedTasks.forEachChunk(pool, (length + CHUNK_SIZE - 1) / CHUNK_SIZE,
+            chunk -> body.run(chunk * CHUNK_SIZE, Math.min(length, (chunk + 1) * CHUNK_SIZE)));
+    }
+
+    private interface RangeBody {
+        void run(int from, int to);
+    }
+}
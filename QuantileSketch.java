@@ -0,0 +1,204 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Approximate quantiles (median, p90, p99, ...) of a stream of any length in
+// bounded memory: a KLL sketch (Karnin, Lang and Liberty, 2016). Values go
+// into level 0. When the sketch is full, a level is sorted and every other
+// value moves up a level, where each value stands for twice as many inputs.
+// Upper levels get more room than lower ones, so the rank error stays
+// around 1.7 / k of the count no matter how many values are added: about
+// 1% with the default k of 200, using a few kilobytes.
+//
+// Sketches filled separately can be merged, and the result is as accurate as
+// one sketch that saw every value. Not thread-safe; give each thread its own
+// sketch and merge them.
+public final class QuantileSketch {
+    public static final int DEFAULT_K = 200;
+
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+    private static final int MIN_LEVEL_CAPACITY = 2;
+
+    private final int k;
+    private final SplittableRandom random;
+    private double[][] levels = new double[1][];
+    private int[] sizes = new int[1];
+    private int height = 1;
+    private int retained;
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    // Sorted values with cumulative weights, rebuilt after the sketch changes
+    private double[] sortedValues;
+    private long[] cumulativeWeights;
+
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    public QuantileSketch(int k) {
+        this(k, new SplittableRandom());
+    }
+
+    // A fixed seed makes the sketch's answers reproducible
+    public QuantileSketch(int k, long seed) {
+        this(k, new SplittableRandom(seed));
+    }
+
+    private QuantileSketch(int k, SplittableRandom random) {
+        if (k < 8) {
+            throw new IllegalArgumentException("Sketch size k must be at least 8");
+        }
+        this.k = k;
+        this.random = random;
+        levels[0] = new double[k];
+    }
+
+    // NaN has no rank, so it is ignored
+    public void add(double value) {
+        if (Double.isNaN(value)) return;
+        append(0, value);
+        count++;
+        if (value < min) min = value;
+        if (value > max) max = value;
+        sortedValues = null;
+        if (retained > totalCapacity()) compress();
+    }
+
+    public void addAll(double[] values) {
+        for (double value : values) add(value);
+    }
+
+    public void merge(QuantileSketch other) {
+        if (other.count == 0) return;
+        for (int level = 0; level < other.height; level++) {
+            for (int i = 0; i < other.sizes[level]; i++) {
+                append(level, other.levels[level][i]);
+            }
+        }
+        count += other.count;
+        if (other.min < min) min = other.min;
+        if (other.max > max) max = other.max;
+        sortedValues = null;
+        while (retained > totalCapacity()) compress();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMinimum() {
+        return count > 0 ? min : 0;
+    }
+
+    public double getMaximum() {
+        return count > 0 ? max : 0;
+    }
+
+    // Approximate value at fraction q of the way through the sorted input
+    public double quantile(double q) {
+        if (!(q >= 0 && q <= 1)) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1");
+        }
+        if (count == 0) return 0;
+        if (q == 0) return min;
+        if (q == 1) return max;
+        if (sortedValues == null) buildSortedView();
+        long rank = Math.max(1, (long) Math.ceil(q * count));
+        int index = Arrays.binarySearch(cumulativeWeights, rank);
+        if (index < 0) index = -index - 1;
+        return sortedValues[Math.min(index, sortedValues.length - 1)];
+    }
+
+    public double median() {
+        return quantile(0.5);
+    }
+
+    // Approximate fraction of the input that is at most value
+    public double rank(double value) {
+        if (count == 0) return 0;
+        if (sortedValues == null) buildSortedView();
+        int index = Arrays.binarySearch(sortedValues, value);
+        if (index < 0) {
+            index = -index - 2;
+        } else {
+            while (index + 1 < sortedValues.length && sortedValues[index + 1] == value) index++;
+        }
+        return index < 0 ? 0 : (double) cumulativeWeights[index] / count;
+    }
+
+    private void append(int level, double value) {
+        if (level == height) addLevel();
+        double[] items = levels[level];
+        if (sizes[level] == items.length) {
+            levels[level] = items = Arrays.copyOf(items, items.length * 2);
+        }
+        items[sizes[level]++] = value;
+        retained++;
+    }
+
+    private void addLevel() {
+        if (height == levels.length) {
+            levels = Arrays.copyOf(levels, height * 2);
+            sizes = Arrays.copyOf(sizes, height * 2);
+        }
+        levels[height] = new double[Math.max(MIN_LEVEL_CAPACITY, levelCapacity(0))];
+        height++;
+    }
+
+    // The top level holds k values; each level below holds 2/3 as many
+    private int levelCapacity(int level) {
+        int depth = height - level - 1;
+        return Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+    }
+
+    private int totalCapacity() {
+        int total = 0;
+        for (int level = 0; level < height; level++) total += levelCapacity(level);
+        return total;
+    }
+
+    // Halves the lowest level that is over its capacity into the one above
+    private void compress() {
+        for (int level = 0; level < height; level++) {
+            if (sizes[level] < levelCapacity(level)) continue;
+            double[] items = levels[level];
+            int size = sizes[level];
+            Arrays.sort(items, 0, size);
+            // With an odd count the smallest value stays behind
+            int keep = size & 1;
+            int offset = random.nextBoolean() ? 1 : 0;
+            sizes[level] = keep;
+            retained -= size - keep;
+            for (int i = keep + offset; i < size; i += 2) {
+                append(level + 1, items[i]);
+            }
+            return;
+        }
+    }
+
+    // Merges the levels, already sorted one by one, into a single sorted run
+    private void buildSortedView() {
+        double[] values = new double[retained];
+        long[] weights = new long[retained];
+        int[] positions = new int[height];
+        for (int level = 0; level < height; level++) {
+            Arrays.sort(levels[level], 0, sizes[level]);
+        }
+        long cumulative = 0;
+        for (int n = 0; n < retained; n++) {
+            int best = -1;
+            for (int level = 0; level < height; level++) {
+                if (positions[level] < sizes[level]
+                    && (best < 0 || levels[level][positions[level]] < levels[best][positions[best]])) {
+                    best = level;
+                }
+            }
+            values[n] = levels[best][positions[best]++];
+            cumulative += 1L << best;
+            weights[n] = cumulative;
+        }
+        sortedValues = values;
+        cumulativeWeights = weights;
+    }
+}
@@ -0,0 +1,112 @@
+// Exact medians and percentiles by selection rather than sorting. Finding
+// the k-th smallest of n values takes O(n) expected time; sorting takes
+// O(n log n).
+//
+// Percentiles interpolate linearly between the two closest ranks, the same
+// definition as a spreadsheet's PERCENTILE, so percentile(values, 0.5) equals
+// the calculator's median: the middle value, or the mean of the two middle
+// values. NaN values sort after every number, as in Arrays.sort.
+final class Quantiles {
+    // Below this size an insertion sort beats further partitioning
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private Quantiles() {
+    }
+
+    static double median(double[] values) {
+        return percentile(values, 0.5);
+    }
+
+    // p is a fraction between 0 and 1; values is left unchanged
+    static double percentile(double[] values, double p) {
+        if (values.length == 0) return 0;
+        return percentileInPlace(values.clone(), 0, values.length, p);
+    }
+
+    // Reorders data[from, to) while selecting
+    static double percentileInPlace(double[] data, int from, int to, double p) {
+        if (!(p >= 0 && p <= 1)) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        }
+        // Move NaNs to the end so the comparisons below see only numbers
+        int end = to;
+        for (int i = from; i < end; i++) {
+            if (Double.isNaN(data[i])) {
+                data[i--] = data[--end];
+                data[end] = Double.NaN;
+            }
+        }
+        double position = p * (to - from - 1);
+        int lower = from + (int) Math.floor(position);
+        double fraction = position - Math.floor(position);
+        if (lower >= end) return Double.NaN;
+
+        double low = select(data, from, end, lower);
+        if (fraction == 0) return low;
+        if (lower + 1 >= end) return Double.NaN;
+        // After selecting, everything above index lower is at least low, so
+        // the next rank is the smallest of those
+        double high = data[lower + 1];
+        for (int i = lower + 2; i < end; i++) {
+            if (data[i] < high) high = data[i];
+        }
+        // Halfway is the median's usual mean of the two middle values
+        return fraction == 0.5 ? (low + high) / 2 : low + (high - low) * fraction;
+    }
+
+    // Returns the value that would be at data[k] if data[from, to) were
+    // sorted, and leaves it there with nothing larger before it and nothing
+    // smaller after it. Quickselect with a median-of-three pivot; falls back
+    // to sorting if partitioning keeps going badly.
+    static double select(double[] data, int from, int to, int k) {
+        int left = from;
+        int right = to - 1;
+        int budget = 2 * (32 - Integer.numberOfLeadingZeros(to - from));
+        while (right - left >= INSERTION_SORT_THRESHOLD) {
+            if (budget-- == 0) {
+                java.util.Arrays.sort(data, left, right + 1);
+                return data[k];
+            }
+            int middle = (left + right) >>> 1;
+            if (data[middle] < data[left]) swap(data, middle, left);
+            if (data[right] < data[left]) swap(data, right, left);
+            if (data[right] < data[middle]) swap(data, right, middle);
+            double pivot = data[middle];
+
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (data[i] < pivot) i++;
+                while (data[j] > pivot) j--;
+                if (i <= j) {
+                    swap(data, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return data[k];
+            }
+        }
+        for (int i = left + 1; i <= right; i++) {
+            double value = data[i];
+            int j = i - 1;
+            while (j >= left && data[j] > value) {
+                data[j + 1] = data[j];
+                j--;
+            }
+            data[j + 1] = value;
+        }
+        return data[k];
+    }
+
+    private static void swap(double[] data, int i, int j) {
+        double t = data[i];
+        data[i] = data[j];
+        data[j] = t;
+    }
+}
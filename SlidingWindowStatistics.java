@@ -0,0 +1,352 @@
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+// Rolling statistics over the most recent values of a live stream: either
+// the last N values or those added in the last T of time. Every update is
+// incremental, so nothing is recomputed from scratch as values arrive or
+// expire:
+//
+//   values       a ring buffer (with timestamps for time windows)
+//   mean, var    Welford's update, reversed when a value leaves the window;
+//                rebuilt from the ring once per window's worth of removals
+//                so rounding cannot accumulate
+//   min, max     monotonic deques of positions in the ring, O(1) amortized
+//   quantiles    a log-bucketed histogram (about 1% relative accuracy) whose
+//                buckets are incremented and decremented
+//
+// Adding is O(1) amortized. Quantile queries walk the occupied buckets,
+// which is a few hundred for values spanning several orders of magnitude,
+// independent of the window size. NaN values are ignored. Methods are
+// synchronized, so one thread can feed the window while others read it.
+public final class SlidingWindowStatistics {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // 0 for a time window
+    private final int size;
+    // 0 for a count window
+    private final long windowNanos;
+    private final LongSupplier clock;
+
+    private double[] values;
+    private long[] times;
+    private int mask;
+    // Sequence numbers: the ring holds [first, next)
+    private long first;
+    private long next;
+
+    // Sequence numbers of candidate extremes, oldest first; the values they
+    // point at decrease (max) or increase (min) from head to tail
+    private long[] maxQueue;
+    private long maxHead, maxTail;
+    private long[] minQueue;
+    private long minHead, minTail;
+
+    private double mean;
+    private double m2;
+    private long removalsSinceRebuild;
+
+    private final LogHistogram histogram = new LogHistogram(0.01);
+
+    private SlidingWindowStatistics(int size, long windowNanos, LongSupplier clock) {
+        this.size = size;
+        this.windowNanos = windowNanos;
+        this.clock = clock;
+        int capacity = size > 0 ? Integer.highestOneBit(Math.max(1, size - 1)) << 1 : INITIAL_CAPACITY;
+        allocate(Math.max(capacity, 2));
+    }
+
+    // The last size values
+    public static SlidingWindowStatistics ofCount(int size) {
+        if (size < 1 || size > 1 << 30) throw new IllegalArgumentException("Window size must be between 1 and 2^30");
+        return new SlidingWindowStatistics(size, 0, null);
+    }
+
+    // The values added within the last window of System.nanoTime
+    public static SlidingWindowStatistics ofDuration(Duration window) {
+        return ofDuration(window, System::nanoTime);
+    }
+
+    // The same with another clock in nanoseconds, such as event timestamps
+    // when replaying a recorded stream; the clock must not go backwards
+    public static SlidingWindowStatistics ofDuration(Duration window, LongSupplier nanoClock) {
+        if (window.isNegative() || window.isZero()) throw new IllegalArgumentException("Window must be positive");
+        return new SlidingWindowStatistics(0, window.toNanos(), nanoClock);
+    }
+
+    public synchronized void add(double value) {
+        if (Double.isNaN(value)) return;
+        long now = windowNanos > 0 ? clock.getAsLong() : 0;
+        if (windowNanos > 0) {
+            expire(now);
+        } else if (next - first == size) {
+            removeOldest();
+        }
+        if (next - first == values.length) allocate(values.length * 2);
+
+        int slot = (int) (next & mask);
+        values[slot] = value;
+        if (times != null) times[slot] = now;
+
+        while (maxTail > maxHead && values[(int) (maxQueue[(int) ((maxTail - 1) & mask)] & mask)] <= value) maxTail--;
+        maxQueue[(int) (maxTail++ & mask)] = next;
+        while (minTail > minHead && values[(int) (minQueue[(int) ((minTail - 1) & mask)] & mask)] >= value) minTail--;
+        minQueue[(int) (minTail++ & mask)] = next;
+        next++;
+
+        long count = next - first;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        histogram.add(value, 1);
+    }
+
+    public synchronized long getCount() {
+        expire();
+        return next - first;
+    }
+
+    // The statistics of an empty window are 0, as in StatisticsAccumulator
+    public synchronized double getMean() {
+        expire();
+        return next > first ? mean : 0;
+    }
+
+    public synchronized double getSum() {
+        expire();
+        return mean * (next - first);
+    }
+
+    // Population variance, matching the statistics calculator
+    public synchronized double getVariance() {
+        expire();
+        long count = next - first;
+        return count > 0 ? Math.max(0, m2 / count) : 0;
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    public synchronized double getMinimum() {
+        expire();
+        return minTail > minHead ? values[(int) (minQueue[(int) (minHead & mask)] & mask)] : 0;
+    }
+
+    public synchronized double getMaximum() {
+        expire();
+        return maxTail > maxHead ? values[(int) (maxQueue[(int) (maxHead & mask)] & mask)] : 0;
+    }
+
+    // Approximate, within about 1% of the true value; q is a fraction from 0 to 1
+    public synchronized double quantile(double q) {
+        if (!(q >= 0 && q <= 1)) throw new IllegalArgumentException("Quantile must be between 0 and 1");
+        expire();
+        if (next == first) return Double.NaN;
+        double value = histogram.quantile(q);
+        // The exact extremes are known, so the estimate never lies outside them
+        return Math.min(Math.max(value, getMinimum()), getMaximum());
+    }
+
+    public double median() {
+        return quantile(0.5);
+    }
+
+    public synchronized CalculationResult.Summary toResult() {
+        expire();
+        long count = next - first;
+        if (count == 0) return new CalculationResult.Summary(new StatisticsAccumulator(), null);
+        return new CalculationResult.Summary(count, getSum(), getMean(), getStandardDeviation(),
+                                             getMinimum(), getMaximum(),
+                                             quantile(0.5), quantile(0.9), quantile(0.99));
+    }
+
+    private void expire() {
+        if (windowNanos > 0) expire(clock.getAsLong());
+    }
+
+    private void expire(long now) {
+        while (next > first && now - times[(int) (first & mask)] >= windowNanos) removeOldest();
+    }
+
+    private void removeOldest() {
+        double value = values[(int) (first & mask)];
+        if (maxTail > maxHead && maxQueue[(int) (maxHead & mask)] == first) maxHead++;
+        if (minTail > minHead && minQueue[(int) (minHead & mask)] == first) minHead++;
+        first++;
+        histogram.add(value, -1);
+
+        long count = next - first;
+        if (count == 0) {
+            mean = 0;
+            m2 = 0;
+        } else if (++removalsSinceRebuild >= (size > 0 ? size : mask + 1)) {
+            // A window's worth: the size of a count window, or the ring's
+            // capacity, which bounds what a time window holds
+            rebuildMoments();
+        } else {
+            // Welford's update in reverse
+            double previousMean = mean;
+            mean -= (value - mean) / count;
+            m2 -= (value - previousMean) * (value - mean);
+        }
+    }
+
+    private void rebuildMoments() {
+        double newMean = 0;
+        double newM2 = 0;
+        long count = 0;
+        for (long s = first; s < next; s++) {
+            double value = values[(int) (s & mask)];
+            count++;
+            double delta = value - newMean;
+            newMean += delta / count;
+            newM2 += delta * (value - newMean);
+        }
+        mean = newMean;
+        m2 = newM2;
+        removalsSinceRebuild = 0;
+    }
+
+    // Sets up the ring with a power-of-two capacity, keeping what it holds;
+    // positions are sequence numbers masked to the capacity
+    private void allocate(int capacity) {
+        double[] newValues = new double[capacity];
+        long[] newTimes = windowNanos > 0 ? new long[capacity] : null;
+        long[] newMax = new long[capacity];
+        long[] newMin = new long[capacity];
+        int newMask = capacity - 1;
+        for (long s = first; s < next; s++) {
+            newValues[(int) (s & newMask)] = values[(int) (s & mask)];
+            if (newTimes != null) newTimes[(int) (s & newMask)] = times[(int) (s & mask)];
+        }
+        for (long i = maxHead; i < maxTail; i++) newMax[(int) (i & newMask)] = maxQueue[(int) (i & mask)];
+        for (long i = minHead; i < minTail; i++) newMin[(int) (i & newMask)] = minQueue[(int) (i & mask)];
+        values = newValues;
+        times = newTimes;
+        maxQueue = newMax;
+        minQueue = newMin;
+        mask = newMask;
+    }
+
+    // Counts of values in logarithmic buckets: bucket i of the positive side
+    // holds (gamma^(i-1), gamma^i], and every value in it is within the
+    // relative accuracy of the bucket's midpoint. Negative values mirror
+    // this; zeros are counted apart. Counts can go down as well as up.
+    //
+    // The logarithm comes from the double's exponent plus a table lookup on
+    // the top mantissa bits rather than Math.log, which is most of the cost
+    // of an update; the table's resolution adds under 0.03% to the error.
+    private static final class LogHistogram {
+        private static final int MANTISSA_BITS = 12;
+        private static final double[] LOG_MANTISSA = new double[1 << MANTISSA_BITS];
+        private static final double LOG_2 = Math.log(2);
+
+        static {
+            // The log of each table cell's midpoint
+            for (int i = 0; i < LOG_MANTISSA.length; i++) {
+                LOG_MANTISSA[i] = Math.log(1 + (i + 0.5) / LOG_MANTISSA.length);
+            }
+        }
+
+        private final double gamma;
+        private final double inverseLogGamma;
+        private final Buckets positive = new Buckets();
+        private final Buckets negative = new Buckets();
+        private long zeros;
+        private long count;
+
+        LogHistogram(double accuracy) {
+            gamma = (1 + accuracy) / (1 - accuracy);
+            inverseLogGamma = 1 / Math.log(gamma);
+        }
+
+        void add(double value, int delta) {
+            count += delta;
+            if (value > 0) {
+                positive.add(index(value), delta);
+            } else if (value < 0) {
+                negative.add(index(-value), delta);
+            } else {
+                zeros += delta;
+            }
+        }
+
+        private int index(double magnitude) {
+            // Subnormals and infinities are clamped to the outermost buckets
+            double x = Math.max(Math.min(magnitude, Double.MAX_VALUE), Double.MIN_NORMAL);
+            int cell = (int) (Double.doubleToRawLongBits(x) >>> (52 - MANTISSA_BITS)) & (LOG_MANTISSA.length - 1);
+            double log = Math.getExponent(x) * LOG_2 + LOG_MANTISSA[cell];
+            return (int) Math.ceil(log * inverseLogGamma);
+        }
+
+        private double value(int index) {
+            return 2 * Math.pow(gamma, index) / (gamma + 1);
+        }
+
+        // The value of rank q * (count - 1), from the most negative upwards
+        double quantile(double q) {
+            long rank = (long) Math.floor(q * (count - 1));
+            long seen = 0;
+            for (int i = negative.highest(); i >= negative.lowest(); i--) {
+                seen += negative.get(i);
+                if (seen > rank) return -value(i);
+            }
+            seen += zeros;
+            if (seen > rank) return 0;
+            for (int i = positive.lowest(); i <= positive.highest(); i++) {
+                seen += positive.get(i);
+                if (seen > rank) return value(i);
+            }
+            return value(positive.highest());
+        }
+    }
+
+    // A growable array of counts indexed from offset upwards
+    private static final class Buckets {
+        private long[] counts = new long[0];
+        private int offset;
+        private int lowest = Integer.MAX_VALUE;
+        private int highest = Integer.MIN_VALUE;
+
+        void add(int index, int delta) {
+            if (counts.length == 0) {
+                counts = new long[64];
+                offset = index - 32;
+            } else if (index < offset || index >= offset + counts.length) {
+                int from = Math.min(offset, index);
+                int to = Math.max(offset + counts.length, index + 1);
+                int length = Math.max(to - from, counts.length * 2);
+                int newOffset = index < offset ? to - length : from;
+                long[] grown = new long[length];
+                System.arraycopy(counts, 0, grown, offset - newOffset, counts.length);
+                counts = grown;
+                offset = newOffset;
+            }
+            counts[index - offset] += delta;
+            if (delta > 0) {
+                lowest = Math.min(lowest, index);
+                highest = Math.max(highest, index);
+            } else {
+                // Shrink the occupied range past buckets that emptied
+                while (lowest <= highest && counts[lowest - offset] == 0) lowest++;
+                while (highest >= lowest && counts[highest - offset] == 0) highest--;
+                if (lowest > highest) {
+                    lowest = Integer.MAX_VALUE;
+                    highest = Integer.MIN_VALUE;
+                }
+            }
+        }
+
+        long get(int index) {
+            return counts[index - offset];
+        }
+
+        int lowest() {
+            return lowest;
+        }
+
+        int highest() {
+            return highest;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+// One-pass summary statistics in constant memory: count, sum, mean,
+// variance, standard deviation, minimum and maximum. Values can be added one
+// at a time from a stream of any length, and accumulators filled separately
+// (per file, per thread) can be merged into one.
+//
+// The variance uses Welford's update, which avoids the cancellation of the
+// textbook sum-of-squares formula. The sum is Neumaier-compensated, so the
+// mean of a long stream does not drift. Not thread-safe; give each thread its
+// own accumulator and merge them.
+public final class StatisticsAccumulator {
+    private long count;
+    private double mean;
+    // Sum of squared differences from the running mean
+    private double m2;
+    private double sum;
+    private double compensation;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public void add(double value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        addToSum(value);
+        if (value < min) min = value;
+        if (value > max) max = value;
+    }
+
+    public void addAll(double[] values) {
+        addAll(values, 0, values.length);
+    }
+
+    public void addAll(double[] values, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            add(values[i]);
+        }
+    }
+
+    // Folds another accumulator's values into this one (Chan et al.)
+    public void merge(StatisticsAccumulator other) {
+        if (other.count == 0) return;
+        if (count == 0) {
+            count = other.count;
+            mean = other.mean;
+            m2 = other.m2;
+            sum = other.sum;
+            compensation = other.compensation;
+            min = other.min;
+            max = other.max;
+            return;
+        }
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        m2 += other.m2 + delta * delta * ((double) count * other.count / total);
+        count = total;
+        addToSum(other.sum);
+        addToSum(other.compensation);
+        if (other.min < min) min = other.min;
+        if (other.max > max) max = other.max;
+    }
+
+    private void addToSum(double value) {
+        double t = sum + value;
+        if (Math.abs(sum) >= Math.abs(value)) {
+            compensation += (sum - t) + value;
+        } else {
+            compensation += (value - t) + sum;
+        }
+        sum = t;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum + compensation;
+    }
+
+    // The statistics of an empty accumulator are 0, as in analyzeNumbers
+    public double getMean() {
+        return count > 0 ? getSum() / count : 0;
+    }
+
+    // Population variance, matching the statistics calculator
+    public double getVariance() {
+        return count > 0 ? Math.max(0, m2 / count) : 0;
+    }
+
+    public double getSampleVariance() {
+        return count > 1 ? Math.max(0, m2 / (count - 1)) : 0;
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    public double getMinimum() {
+        return count > 0 ? min : 0;
+    }
+
+    public double getMaximum() {
+        return count > 0 ? max : 0;
+    }
+
+    public double getRange() {
+        return getMaximum() - getMinimum();
+    }
+
+    public CalculationResult.Summary toResult() {
+        return new CalculationResult.Summary(this, null);
+    }
+
+    // Adds the sketch's approximate median and percentiles to the summary
+    public CalculationResult.Summary toResult(QuantileSketch sketch) {
+        return new CalculationResult.Summary(this, sketch);
+    }
+
+    @Override
+    public String toString() {
+        return toResult().toString();
+    }
+}
@@ -0,0 +1,280 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Every unit the converter knows, as data. Each unit gets an integer id when
+// the registry is built. Its names and aliases, in any case, map to that id,
+// and the id carries the unit's category. Converting between two units of a
+// category uses a precomputed matrix entry:
+//
+//   result = value * scale[from][to] + shift[from][to]
+//
+// so a conversion is one lookup and one fused multiply-add (a plain multiply
+// when there is no offset), and the category never has to be supplied. Whole
+// arrays convert in one call. To add a unit, add a row to UNITS.
+//
+// Each category also has a dimension and the SI value of its base unit, so
+// units can be combined into compound units such as "km/h" (see
+// CompoundUnit), which are parsed once and cached.
+final class UnitRegistry {
+
+    // {category, dimension, SI value of the category's base unit}; dimensions
+    // are exponents of M(ass), L(ength), T(ime) and K (temperature)
+    private static final String[][] CATEGORIES = {
+        {"Length", "L", "1"},
+        {"Weight", "M", "1"},
+        {"Temperature", "K", "1"},
+        {"Volume", "L3", "0.001"},
+        {"Area", "L2", "1"},
+        {"Time", "T", "1"},
+    };
+
+    // {category, display name, factor, offset, aliases...}: a value v of the
+    // unit is (v + offset) * factor of the category's base unit. Factors may
+    // be written as fractions such as "5/9".
+    private static final String[][] UNITS = {
+        {"Length", "Meter", "1", "0", "m"},
+        {"Length", "Foot", "0.3048", "0", "ft"},
+        {"Length", "Inch", "0.0254", "0", "in"},
+        {"Length", "Kilometer", "1000", "0", "km"},
+        {"Length", "Mile", "1609.34", "0", "mi"},
+        {"Length", "Yard", "0.9144", "0", "yd"},
+        {"Length", "Centimeter", "0.01", "0", "cm"},
+
+        {"Weight", "Kilogram", "1", "0", "kg"},
+        {"Weight", "Pound", "0.453592", "0", "lb"},
+        {"Weight", "Ounce", "0.0283495", "0", "oz"},
+        {"Weight", "Gram", "0.001", "0", "g"},
+
+        {"Temperature", "Celsius", "1", "273.15"},
+        {"Temperature", "Fahrenheit", "5/9", "459.67"},
+        {"Temperature", "Kelvin", "1", "0"},
+
+        {"Volume", "Liter", "1", "0", "l"},
+        {"Volume", "Gallon", "3.78541", "0", "gal"},
+        {"Volume", "Milliliter", "0.001", "0", "ml"},
+        {"Volume", "Cubic Meter", "1000", "0", "m3"},
+
+        {"Area", "Square Meter", "1", "0", "m2"},
+        {"Area", "Square Foot", "0.092903", "0", "ft2"},
+        {"Area", "Acre", "4046.86", "0"},
+        {"Area", "Hectare", "10000", "0"},
+
+        {"Time", "Second", "1", "0", "s", "sec"},
+        {"Time", "Minute", "60", "0", "min"},
+        {"Time", "Hour", "3600", "0", "h", "hr"},
+        {"Time", "Day", "86400", "0"},
+    };
+
+    private static final UnitRegistry STANDARD = new UnitRegistry(CATEGORIES, UNITS);
+
+    private static final int MAX_COMPOUNDS = 4096;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> categories = new ArrayList<>();
+    private final List<List<String>> categoryUnits = new ArrayList<>();
+    private final String[] names;
+    private final int[] categoryOf;
+    private final int[] indexInCategory;
+    private final int[] categorySizes;
+    private final int[][] dimensions;
+    private final double[] siFactors;
+    private final double[] siOffsets;
+    private final Map<String, CompoundUnit> compounds = new ConcurrentHashMap<>();
+    // Per category, n * n entries indexed [from * n + to]
+    private final double[][] scales;
+    private final double[][] shifts;
+
+    private UnitRegistry(String[][] categoryTable, String[][] table) {
+        int count = table.length;
+        names = new String[count];
+        categoryOf = new int[count];
+        indexInCategory = new int[count];
+        dimensions = new int[count][];
+        siFactors = new double[count];
+        siOffsets = new double[count];
+        List<List<BigDecimal[]>> definitions = new ArrayList<>();
+        for (String[] row : categoryTable) {
+            categories.add(row[0]);
+            categoryUnits.add(new ArrayList<>());
+            definitions.add(new ArrayList<>());
+        }
+
+        for (int id = 0; id < count; id++) {
+            String[] row = table[id];
+            int category = categories.indexOf(row[0]);
+            if (category < 0) throw new IllegalStateException("Unit " + row[1] + " has no category " + row[0]);
+            BigDecimal factor = decimal(row[2]);
+            BigDecimal offset = decimal(row[3]);
+            names[id] = row[1];
+            categoryOf[id] = category;
+            indexInCategory[id] = categoryUnits.get(category).size();
+            categoryUnits.get(category).add(row[1]);
+            definitions.get(category).add(new BigDecimal[]{factor, offset});
+            dimensions[id] = CompoundUnit.parseDimension(categoryTable[category][1]);
+            siFactors[id] = factor.multiply(decimal(categoryTable[category][2]), MathContext.DECIMAL128).doubleValue();
+            siOffsets[id] = offset.doubleValue();
+
+            register(row[1], id);
+            for (int alias = 4; alias < row.length; alias++) register(row[alias], id);
+        }
+
+        // scale = fa / fb and shift = oa * fa / fb - ob, in 34 digits so the
+        // doubles are as close as they can be (0 C is exactly 32 F)
+        MathContext context = MathContext.DECIMAL128;
+        categorySizes = new int[categories.size()];
+        scales = new double[categories.size()][];
+        shifts = new double[categories.size()][];
+        for (int category = 0; category < categories.size(); category++) {
+            List<BigDecimal[]> units = definitions.get(category);
+            int n = units.size();
+            categorySizes[category] = n;
+            scales[category] = new double[n * n];
+            shifts[category] = new double[n * n];
+            for (int from = 0; from < n; from++) {
+                for (int to = 0; to < n; to++) {
+                    BigDecimal scale = units.get(from)[0].divide(units.get(to)[0], context);
+                    BigDecimal shift = units.get(from)[1].multiply(scale, context).subtract(units.get(to)[1], context);
+                    scales[category][from * n + to] = scale.doubleValue();
+                    shifts[category][from * n + to] = shift.doubleValue();
+                }
+            }
+        }
+    }
+
+    static UnitRegistry standard() {
+        return STANDARD;
+    }
+
+    private void register(String name, int id) {
+        Integer previous = ids.put(name.toLowerCase(Locale.ROOT), id);
+        if (previous != null && previous != id) {
+            throw new IllegalStateException("Unit name used twice: " + name);
+        }
+        ids.put(name, id);
+    }
+
+    private static BigDecimal decimal(String text) {
+        int slash = text.indexOf('/');
+        if (slash < 0) return new BigDecimal(text);
+        return new BigDecimal(text.substring(0, slash))
+            .divide(new BigDecimal(text.substring(slash + 1)), MathContext.DECIMAL128);
+    }
+
+    // The unit's id, or -1; names match in any case
+    int find(String name) {
+        Integer id = ids.get(name);
+        if (id == null) id = ids.get(name.toLowerCase(Locale.ROOT));
+        return id != null ? id : -1;
+    }
+
+    int id(String name) {
+        int id = find(name);
+        if (id < 0) throw new RuntimeException("Unknown unit: " + name);
+        return id;
+    }
+
+    String name(int id) {
+        return names[id];
+    }
+
+    String category(int id) {
+        return categories.get(categoryOf[id]);
+    }
+
+    List<String> categories() {
+        return Collections.unmodifiableList(categories);
+    }
+
+    // Display names of a category's units, in table order
+    List<String> units(String category) {
+        int index = categories.indexOf(category);
+        if (index < 0) throw new RuntimeException("Unknown unit category: " + category);
+        return Collections.unmodifiableList(categoryUnits.get(index));
+    }
+
+    // The unit's exponents of M, L, T and K, and the size of one unit in SI
+    // units of that dimension. Offset units such as Celsius have a nonzero
+    // siOffset.
+    int[] dimension(int id) {
+        return dimensions[id].clone();
+    }
+
+    double siFactor(int id) {
+        return siFactors[id];
+    }
+
+    double siOffset(int id) {
+        return siOffsets[id];
+    }
+
+    // A plain or compound unit, parsed on first use
+    CompoundUnit compound(String text) {
+        CompoundUnit unit = compounds.get(text);
+        if (unit == null) {
+            unit = CompoundUnit.parse(text, this);
+            // Only successful parses are kept, and only so many of them
+            if (compounds.size() < MAX_COMPOUNDS) compounds.put(text, unit);
+        }
+        return unit;
+    }
+
+    double scale(int from, int to) {
+        return scales[checkCategory(from, to)][entry(from, to)];
+    }
+
+    double shift(int from, int to) {
+        return shifts[checkCategory(from, to)][entry(from, to)];
+    }
+
+    double convert(double value, int from, int to) {
+        int category = checkCategory(from, to);
+        int entry = entry(from, to);
+        double shift = shifts[category][entry];
+        return shift == 0 ? value * scales[category][entry] : Math.fma(value, scales[category][entry], shift);
+    }
+
+    // Converts values[offset, offset + length) into out from outOffset on;
+    // out may be values itself. The matrix entry is looked up once, and the
+    // loops are plain enough for C2 to compile to SIMD multiplies and FMAs.
+    void convert(double[] values, int offset, double[] out, int outOffset, int length, int from, int to) {
+        Objects.checkFromIndexSize(offset, length, values.length);
+        Objects.checkFromIndexSize(outOffset, length, out.length);
+        int category = checkCategory(from, to);
+        int entry = entry(from, to);
+        double scale = scales[category][entry];
+        double shift = shifts[category][entry];
+        if (shift == 0 && scale == 1) {
+            System.arraycopy(values, offset, out, outOffset, length);
+        } else if (shift == 0) {
+            for (int i = 0; i < length; i++) {
+                out[outOffset + i] = values[offset + i] * scale;
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                out[outOffset + i] = Math.fma(values[offset + i], scale, shift);
+            }
+        }
+    }
+
+    private int checkCategory(int from, int to) {
+        int category = categoryOf[from];
+        if (categoryOf[to] != category) {
+            throw new RuntimeException("Cannot convert " + category(from).toLowerCase(Locale.ROOT) + " unit "
+                                       + names[from] + " to " + category(to).toLowerCase(Locale.ROOT)
+                                       + " unit " + names[to]);
+        }
+        return category;
+    }
+
+    private int entry(int from, int to) {
+        return indexInCategory[from] * categorySizes[categoryOf[from]] + indexInCategory[to];
+    }
+}